@@ -1,15 +1,24 @@
 package conway.model;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import conway.util.FileIO;
 
 /**
- * Model class storing the states of all cells within the simulation.
+ * Model class storing the states of all cells within the simulation. Consistent views of the
+ * grid can be taken from other threads through {@link #snapshot()}. Updates are computed by
+ * one of several engines, chosen automatically from the observed workload unless set by hand.
  * @author caproven
  */
 public class CellGrid {
 
+    /** Width and height in cells of the square tiles used to track changed regions. */
+    public static final int TILE_SIZE = 8;
+
     /**
      * Arrays holding the cell states. Alternated in usage to handle processing next state.
      * A 0 represents a dead cell while a 1 represents a living cell.
@@ -17,6 +26,39 @@ public class CellGrid {
     private int[][] grid0, grid1;
     /** Determines which array holds the current cell states. */
     private int active;
+    /** Number of updates performed since the grid was created or last read from a file. */
+    private long generation;
+    /**
+     * Tiles containing at least one cell that changed since dirty regions were last taken.
+     * Indexed by tile row, then tile column.
+     */
+    private boolean[][] dirtyTiles;
+    /**
+     * Whether each of grid0 and grid1 is shared with a snapshot. A shared array is never
+     * written to again; it is copied or replaced before the grid changes.
+     */
+    private boolean[] shared = new boolean[2];
+    /**
+     * Tiles which changed during the last update or were edited since. The tiled engine only
+     * recomputes these tiles and their neighbors.
+     */
+    private boolean[][] activeTiles;
+    /** Scratch array receiving the tiles changed by the update in progress. */
+    private boolean[][] changedTiles;
+    /** Whether the inactive array may hold something other than the previous generation. */
+    private boolean incStale;
+    /** Number of living cells in the current generation. */
+    private int population;
+    /** Engine computing the coming updates. */
+    private Engine engine;
+    /** Whether the engine is chosen automatically from the observed workload. */
+    private boolean adaptive;
+    /** Samples the workload and chooses engines while adaptive. */
+    private EngineSelector selector;
+    /** Sparse representation used by the live cell set engine, created on first use. */
+    private LiveCellSet liveCells;
+    /** Cycle being recorded or replayed by the memoized engine, or null if none. */
+    private CycleMemo memo;
 
     /**
      * Constructs the CellGrid with the given dimensions as the number of cells.
@@ -27,16 +69,126 @@ public class CellGrid {
         grid0 = new int[y][x];
         grid1 = new int[y][x];
         active = 0;
+        generation = 0;
+        int tilesY = (y + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesX = (x + TILE_SIZE - 1) / TILE_SIZE;
+        dirtyTiles = new boolean[tilesY][tilesX];
+        activeTiles = new boolean[tilesY][tilesX];
+        changedTiles = new boolean[tilesY][tilesX];
+        population = 0;
+        engine = Engine.DENSE;
+        adaptive = true;
+        selector = new EngineSelector(x * y, tilesX * tilesY);
     }
 
     /**
-     * Retrieves the cell states representing the grid.
+     * Retrieves the cell states representing the grid. The array is the grid's live buffer,
+     * so it must only be read from the thread updating the grid. Other threads should use
+     * {@link #snapshot()} instead.
      * @return 2D array of cell states (0: dead, 1: alive)
      */
     public int[][] getGrid() {
         return getActiveGrid();
     }
 
+    /**
+     * Takes an immutable view of the current generation. The view shares the current buffer
+     * rather than copying it, so taking it is constant time. The grid copies the buffer before
+     * writing to it again, costing one row by row copy of the board per snapshotted
+     * generation.
+     * @return Snapshot of the current generation
+     */
+    public synchronized GridSnapshot snapshot() {
+        shared[active] = true;
+        return new GridSnapshot(getActiveGrid(), generation);
+    }
+
+    /**
+     * Retrieves the number of horizontal cells in the grid.
+     * @return Width of the grid in cells
+     */
+    public int getWidth() {
+        return grid0[0].length;
+    }
+
+    /**
+     * Retrieves the number of vertical cells in the grid.
+     * @return Height of the grid in cells
+     */
+    public int getHeight() {
+        return grid0.length;
+    }
+
+    /**
+     * Retrieves the number of updates performed on the grid.
+     * @return Current generation, starting at 0
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Retrieves the number of living cells in the current grid. The count is kept up to date
+     * as the grid changes, so no scan is needed.
+     * @return Number of living cells
+     */
+    public int getPopulation() {
+        return population;
+    }
+
+    /**
+     * Counts the living cells in the current grid by scanning every cell.
+     * @return Number of living cells
+     */
+    private int countPopulation() {
+        int[][] grid = getActiveGrid();
+        int count = 0;
+        for (int y = 0; y < grid.length; y++) {
+            for (int x = 0; x < grid[0].length; x++) {
+                count += grid[y][x];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the engine computing the coming updates.
+     * @return Current engine
+     */
+    public synchronized Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Fixes the engine used for all coming updates, turning off automatic selection.
+     * @param engine Engine to be used
+     * @throws IllegalArgumentException if engine is {@link Engine#MEMOIZED}, which can only
+     * be entered once a cycle is found
+     */
+    public synchronized void setEngine(Engine engine) {
+        if (engine == Engine.MEMOIZED) {
+            throw new IllegalArgumentException("Memoized engine requires a detected cycle.");
+        }
+        adaptive = false;
+        memo = null;
+        if (engine != this.engine) {
+            EngineSelector.logSwitch(generation, this.engine, engine, "set by hand");
+            this.engine = engine;
+        }
+    }
+
+    /**
+     * Turns automatic engine selection on or off.
+     * @param adaptive Whether the engine is chosen from the observed workload
+     */
+    public synchronized void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        if (!adaptive) {
+            leaveMemo("automatic selection turned off");
+        }
+        selector.reset();
+    }
+
     /**
      * Determines and retrieves the currently active grid. Used internally to uphold abstraction.
      * @return 2D array of the currently active grid
@@ -45,22 +197,235 @@ public class CellGrid {
         return (active == 0) ? (grid0) : (grid1);
     }
 
+    /**
+     * Retrieves the currently active grid for writing, first copying it if it is shared with
+     * a snapshot.
+     * @return 2D array of the currently active grid
+     */
+    private int[][] getWritableGrid() {
+        if (shared[active]) {
+            int[][] copy = copyOf(getActiveGrid());
+            if (active == 0) {
+                grid0 = copy;
+            } else {
+                grid1 = copy;
+            }
+            shared[active] = false;
+        }
+        return getActiveGrid();
+    }
+
+    /**
+     * Copies a buffer row by row.
+     * @param source Buffer to be copied
+     * @return New buffer holding the same cell states
+     */
+    private static int[][] copyOf(int[][] source) {
+        int[][] copy = new int[source.length][];
+        for (int y = 0; y < source.length; y++) {
+            copy[y] = source[y].clone();
+        }
+        return copy;
+    }
+
     /**
      * Toggles the state of the cell at the given coords in the grid.
      * @param x X-coord of the cell to be toggled
      * @param y Y-coord of the cell to be toggled
      */
-    public void toggleCell(int x, int y) {
-        getActiveGrid()[y][x] ^= 1;
+    public synchronized void toggleCell(int x, int y) {
+        int[][] grid = getWritableGrid();
+        grid[y][x] ^= 1;
+        population += (grid[y][x] == 1) ? (1) : (-1);
+        markTile(dirtyTiles, x, y);
+        markTile(activeTiles, x, y);
+        edited();
+    }
+
+    /**
+     * Discards engine state which no longer matches the grid after an edit.
+     */
+    private void edited() {
+        leaveMemo("grid edited");
+        if (liveCells != null) {
+            liveCells.invalidate();
+        }
+        selector.reset();
     }
 
     /**
-     * Performs a single update / tick to the cell automata's state.
+     * Stops recording or replaying a cycle, falling back to the dense engine if the memoized
+     * engine was in use.
+     * @param reason Description of why the cycle is abandoned, for logging
      */
-    public void updateGrid() {
+    private void leaveMemo(String reason) {
+        if (engine == Engine.MEMOIZED) {
+            EngineSelector.logSwitch(generation, engine, Engine.DENSE, reason);
+            engine = Engine.DENSE;
+        }
+        memo = null;
+    }
+
+    /**
+     * Marks the tile holding a cell, if not already marked.
+     * @param tiles Tile flags indexed by tile row, then tile column
+     * @param x X-coord of the cell
+     * @param y Y-coord of the cell
+     * @return 1 if the tile was newly marked, otherwise 0
+     */
+    static int markTile(boolean[][] tiles, int x, int y) {
+        if (tiles[y / TILE_SIZE][x / TILE_SIZE]) {
+            return 0;
+        }
+        tiles[y / TILE_SIZE][x / TILE_SIZE] = true;
+        return 1;
+    }
+
+    /**
+     * Copies a block of cell states into the grid with its top left corner at the given
+     * coords, wrapping around the edges of the grid. Every cell covered by the block is
+     * replaced, so dead cells in the block clear the cells beneath them. Rows are copied in
+     * bulk rather than cell by cell.
+     * @param cells 2D array of cell states (0: dead, 1: alive) to be copied
+     * @param x X-coord of the grid cell receiving the block's top left cell
+     * @param y Y-coord of the grid cell receiving the block's top left cell
+     * @throws IllegalArgumentException if the block is larger than the grid
+     */
+    public synchronized void stamp(int[][] cells, int x, int y) {
+        int width = getWidth();
+        int height = getHeight();
+        if (cells.length > height || (cells.length > 0 && cells[0].length > width)) {
+            throw new IllegalArgumentException("Block exceeds grid.");
+        }
+        int[][] grid = getWritableGrid();
+        x = Math.floorMod(x, width);
+        y = Math.floorMod(y, height);
+        for (int row = 0; row < cells.length; row++) {
+            int gridY = (y + row) % height;
+            int blockWidth = cells[row].length;
+            // split the row in two where it wraps past the right edge
+            int firstPart = Math.min(blockWidth, width - x);
+            population += count(cells[row], 0, blockWidth)
+                    - count(grid[gridY], x, x + firstPart)
+                    - count(grid[gridY], 0, blockWidth - firstPart);
+            System.arraycopy(cells[row], 0, grid[gridY], x, firstPart);
+            System.arraycopy(cells[row], firstPart, grid[gridY], 0, blockWidth - firstPart);
+            markDirty(x, gridY, firstPart);
+            markDirty(0, gridY, blockWidth - firstPart);
+        }
+        edited();
+    }
+
+    /**
+     * Counts the living cells within part of a row.
+     * @param row Cell states of the row
+     * @param from Index of the first cell counted
+     * @param to Index after the last cell counted
+     * @return Number of living cells
+     */
+    private static int count(int[] row, int from, int to) {
+        int count = 0;
+        for (int x = from; x < to; x++) {
+            count += row[x];
+        }
+        return count;
+    }
+
+    /**
+     * Marks the tiles covering a horizontal run of cells as changed.
+     * @param x X-coord of the first cell in the run
+     * @param y Y-coord of the run
+     * @param length Number of cells in the run
+     */
+    private void markDirty(int x, int y, int length) {
+        for (int tx = x / TILE_SIZE; tx <= (x + length - 1) / TILE_SIZE && length > 0; tx++) {
+            dirtyTiles[y / TILE_SIZE][tx] = true;
+            activeTiles[y / TILE_SIZE][tx] = true;
+        }
+    }
+
+    /**
+     * Retrieves the regions of the grid containing cells that changed since the last call,
+     * then marks the whole grid as clean. Changes are tracked per tile of
+     * {@link #TILE_SIZE} cells, and horizontally adjacent changed tiles are merged into a
+     * single region.
+     * @return List of changed regions, each as {x, y, width, height} in cells
+     */
+    public synchronized List<int[]> takeDirtyRegions() {
+        List<int[]> regions = new ArrayList<>();
+        for (int ty = 0; ty < dirtyTiles.length; ty++) {
+            int runStart = -1;
+            for (int tx = 0; tx <= dirtyTiles[ty].length; tx++) {
+                boolean dirty = tx < dirtyTiles[ty].length && dirtyTiles[ty][tx];
+                if (dirty && runStart == -1) {
+                    runStart = tx;
+                } else if (!dirty && runStart != -1) {
+                    int x = runStart * TILE_SIZE;
+                    int y = ty * TILE_SIZE;
+                    regions.add(new int[] { x, y, Math.min(tx * TILE_SIZE, getWidth()) - x,
+                            Math.min(y + TILE_SIZE, getHeight()) - y });
+                    runStart = -1;
+                }
+                if (dirty) {
+                    dirtyTiles[ty][tx] = false;
+                }
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Marks every tile of the grid as changed.
+     */
+    private void markAllDirty() {
+        for (int ty = 0; ty < dirtyTiles.length; ty++) {
+            Arrays.fill(dirtyTiles[ty], true);
+            Arrays.fill(activeTiles[ty], true);
+        }
+    }
+
+    /**
+     * Replaces the current grid with a random soup, each cell being alive with the given
+     * probability. Resets the generation count.
+     * @param density Probability in the range [0, 1] that a cell starts alive
+     * @param rng Source of randomness, allowing soups to be reproduced from a seed
+     * @throws IllegalArgumentException if density is outside of [0, 1]
+     */
+    public synchronized void randomize(double density, Random rng) {
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("Density must be within [0, 1].");
+        }
+        int[][] grid = getWritableGrid();
+        population = 0;
+        for (int y = 0; y < grid.length; y++) {
+            for (int x = 0; x < grid[0].length; x++) {
+                grid[y][x] = (rng.nextDouble() < density) ? (1) : (0);
+                population += grid[y][x];
+            }
+        }
+        generation = 0;
+        incStale = true;
+        markAllDirty();
+        edited();
+    }
+
+    /**
+     * Performs a single update / tick to the cell automata's state, using the current engine.
+     */
+    public synchronized void updateGrid() {
         int[][] activeGrid;
         int[][] incGrid;
 
+        // a buffer still held by a snapshot is left to it, and replaced with a copy. The copy
+        // still holds the previous generation, so the sparse engines can keep relying on it.
+        if (shared[active ^ 1]) {
+            if (active == 0) {
+                grid1 = copyOf(grid1);
+            } else {
+                grid0 = copyOf(grid0);
+            }
+            shared[active ^ 1] = false;
+        }
         if (active == 0) {
             activeGrid = grid0;
             incGrid = grid1;
@@ -69,9 +434,63 @@ public class CellGrid {
             incGrid = grid0;
         }
 
+        for (int ty = 0; ty < changedTiles.length; ty++) {
+            Arrays.fill(changedTiles[ty], false);
+        }
+        int changed;
+        if (engine == Engine.MEMOIZED) {
+            changed = memo.step(incGrid, changedTiles);
+            population = memo.getPopulation();
+        } else if (engine == Engine.LIVE_SET) {
+            if (liveCells == null) {
+                liveCells = new LiveCellSet(getWidth(), getHeight());
+            }
+            changed = liveCells.step(activeGrid, incGrid, incStale, changedTiles);
+            population = liveCells.getPopulation();
+        } else if (engine == Engine.TILED && !incStale) {
+            changed = updateActiveTiles(activeGrid, incGrid);
+        } else {
+            changed = updateRegion(activeGrid, incGrid, 0, 0, getWidth(), getHeight());
+        }
+        if (engine != Engine.LIVE_SET && liveCells != null) {
+            liveCells.invalidate();
+        }
+
+        // changes of this update decide which tiles the next tiled update recomputes
+        boolean[][] swap = activeTiles;
+        activeTiles = changedTiles;
+        changedTiles = swap;
+        for (int ty = 0; ty < activeTiles.length; ty++) {
+            for (int tx = 0; tx < activeTiles[ty].length; tx++) {
+                dirtyTiles[ty][tx] |= activeTiles[ty][tx];
+            }
+        }
+
+        incStale = false;
+        active ^= 1;
+        generation++;
+        if (adaptive) {
+            adapt(changed);
+        }
+    }
+
+    /**
+     * Updates the cells within a rectangular region, recording which tiles changed and
+     * keeping the population up to date.
+     * @param activeGrid Current generation
+     * @param incGrid Buffer receiving the next generation
+     * @param minX X-coord of the region's left column
+     * @param minY Y-coord of the region's top row
+     * @param maxX X-coord after the region's right column
+     * @param maxY Y-coord after the region's bottom row
+     * @return Number of tiles newly marked as changed
+     */
+    private int updateRegion(int[][] activeGrid, int[][] incGrid, int minX, int minY, int maxX,
+            int maxY) {
+        int changed = 0;
         // updates cells based off their neighbors
-        for (int y = 0; y < activeGrid.length; y++) {
-            for (int x = 0; x < activeGrid[0].length; x++) {
+        for (int y = minY; y < maxY; y++) {
+            for (int x = minX; x < maxX; x++) {
                 int neighbors = liveNeighbors(x, y);
                 if (activeGrid[y][x] == 1) { // If cell is alive
                     if (neighbors < 2 || neighbors > 3) {
@@ -87,10 +506,76 @@ public class CellGrid {
                         incGrid[y][x] = 0;
                     }
                 }
+                if (incGrid[y][x] != activeGrid[y][x]) {
+                    population += incGrid[y][x] - activeGrid[y][x];
+                    changed += markTile(changedTiles, x, y);
+                }
             }
         }
+        return changed;
+    }
 
-        active ^= 1;
+    /**
+     * Updates only the tiles which changed, or border a tile which changed, since the previous
+     * update. Every other tile is stable, so the incoming buffer already holds its next state
+     * from the generation before.
+     * @param activeGrid Current generation
+     * @param incGrid Buffer holding the previous generation, receiving the next one
+     * @return Number of tiles newly marked as changed
+     */
+    private int updateActiveTiles(int[][] activeGrid, int[][] incGrid) {
+        int tilesY = activeTiles.length;
+        int tilesX = activeTiles[0].length;
+        int changed = 0;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                boolean needsUpdate = false;
+                for (int dy = -1; dy <= 1 && !needsUpdate; dy++) {
+                    boolean[] row = activeTiles[(ty + dy + tilesY) % tilesY];
+                    for (int dx = -1; dx <= 1 && !needsUpdate; dx++) {
+                        needsUpdate = row[(tx + dx + tilesX) % tilesX];
+                    }
+                }
+                if (needsUpdate) {
+                    changed += updateRegion(activeGrid, incGrid, tx * TILE_SIZE, ty * TILE_SIZE,
+                            Math.min((tx + 1) * TILE_SIZE, getWidth()),
+                            Math.min((ty + 1) * TILE_SIZE, getHeight()));
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Feeds the outcome of an update to the selector, records the generation if a cycle is
+     * being looked for, and switches engines when the selector decides to.
+     * @param changed Number of tiles changed by the update
+     */
+    private void adapt(int changed) {
+        selector.observe(population, changed);
+        if (memo != null && engine != Engine.MEMOIZED) {
+            if (memo.record(getActiveGrid(), population)) {
+                EngineSelector.logSwitch(generation, engine, Engine.MEMOIZED,
+                        "cycle of period " + memo.getPeriod() + " found");
+                engine = Engine.MEMOIZED;
+            } else if (memo.isExhausted()) {
+                memo = null;
+                selector.probeFailed(generation);
+            }
+            return;
+        }
+        if (engine == Engine.MEMOIZED || !selector.isSampleComplete()) {
+            return;
+        }
+        if (selector.shouldProbe(generation)) {
+            memo = new CycleMemo(selector.getMaxPeriod());
+            memo.record(getActiveGrid(), population);
+        }
+        Engine chosen = selector.choose(population, engine);
+        if (chosen != engine) {
+            EngineSelector.logSwitch(generation, engine, chosen, selector.describeSample());
+            engine = chosen;
+        }
     }
 
     /**
@@ -143,9 +628,15 @@ public class CellGrid {
      * @param fileName Name of the file whose contents will be read
      * @throws IOException if file cannot be read or cannot be located
      */
-    public void readFromFile(String fileName) throws IOException {
+    public synchronized void readFromFile(String fileName) throws IOException {
         grid0 = FileIO.read(fileName, grid0[0].length, grid0.length);
+        shared[0] = false;
         active = 0;
+        generation = 0;
+        population = countPopulation();
+        incStale = true;
+        markAllDirty();
+        edited();
     }
 
     /**
@@ -0,0 +1,130 @@
+package conway.model;
+
+import java.util.Arrays;
+
+/**
+ * Records consecutive generations of a grid looking for an exact repeat, then replays the
+ * recorded cycle for the {@link Engine#MEMOIZED} engine instead of computing new generations.
+ * @author caproven
+ */
+class CycleMemo {
+
+    /** Longest cycle being looked for. */
+    private final int maxPeriod;
+    /** Recorded generations, the first of which starts the cycle. */
+    private final int[][][] states;
+    /** Populations of the recorded generations. */
+    private final int[] populations;
+    /** Number of generations recorded so far. */
+    private int recorded;
+    /** Length of the cycle, or 0 while still recording. */
+    private int period;
+    /** Tiles which change when entering each phase of the cycle. */
+    private boolean[][][] changes;
+    /** Number of changed tiles when entering each phase of the cycle. */
+    private int[] changeCounts;
+    /** Phase of the cycle held by the current generation. */
+    private int phase;
+
+    /**
+     * Constructs the memo, ready to record generations.
+     * @param maxPeriod Longest cycle to look for
+     */
+    CycleMemo(int maxPeriod) {
+        this.maxPeriod = maxPeriod;
+        states = new int[maxPeriod + 1][][];
+        populations = new int[maxPeriod + 1];
+    }
+
+    /**
+     * Records the next generation, checking whether it repeats the first one recorded.
+     * @param grid Cell states of the generation
+     * @param population Number of living cells in the generation
+     * @return True if a cycle was found with this generation
+     */
+    boolean record(int[][] grid, int population) {
+        int[][] copy = new int[grid.length][];
+        for (int y = 0; y < grid.length; y++) {
+            copy[y] = grid[y].clone();
+        }
+        if (recorded > 0 && Arrays.deepEquals(copy, states[0])) {
+            period = recorded;
+            findChanges();
+            return true;
+        }
+        states[recorded] = copy;
+        populations[recorded] = population;
+        recorded++;
+        return false;
+    }
+
+    /**
+     * Determines whether every allowed period was checked without finding a cycle.
+     * @return True if recording should stop
+     */
+    boolean isExhausted() {
+        return period == 0 && recorded > maxPeriod;
+    }
+
+    /**
+     * Retrieves the length of the cycle found.
+     * @return Period of the cycle, or 0 while still recording
+     */
+    int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Retrieves the number of living cells in the current phase.
+     * @return Population of the current generation
+     */
+    int getPopulation() {
+        return populations[phase];
+    }
+
+    /**
+     * Compares each phase of the cycle with the one before it, tile by tile.
+     */
+    private void findChanges() {
+        int height = states[0].length;
+        int width = states[0][0].length;
+        int tilesY = (height + CellGrid.TILE_SIZE - 1) / CellGrid.TILE_SIZE;
+        int tilesX = (width + CellGrid.TILE_SIZE - 1) / CellGrid.TILE_SIZE;
+        changes = new boolean[period][tilesY][tilesX];
+        changeCounts = new int[period];
+        for (int p = 0; p < period; p++) {
+            int[][] before = states[(p + period - 1) % period];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (states[p][y][x] != before[y][x]) {
+                        changeCounts[p] += CellGrid.markTile(changes[p], x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the next phase of the cycle into the incoming buffer.
+     * @param incGrid Buffer receiving the next generation
+     * @param changed Tiles changed by the update
+     * @return Number of tiles newly marked as changed
+     */
+    int step(int[][] incGrid, boolean[][] changed) {
+        phase = (phase + 1) % period;
+        int[][] next = states[phase];
+        for (int y = 0; y < next.length; y++) {
+            System.arraycopy(next[y], 0, incGrid[y], 0, next[y].length);
+        }
+        int changedTiles = 0;
+        for (int ty = 0; ty < changed.length; ty++) {
+            for (int tx = 0; tx < changed[ty].length; tx++) {
+                if (changes[phase][ty][tx] && !changed[ty][tx]) {
+                    changed[ty][tx] = true;
+                    changedTiles++;
+                }
+            }
+        }
+        return changedTiles;
+    }
+}
@@ -0,0 +1,26 @@
+package conway.model;
+
+/**
+ * Stepping strategies a CellGrid can switch between. Every engine produces identical
+ * generations; they only differ in how much work each update takes for a given workload.
+ * @author caproven
+ */
+public enum Engine {
+    /** Recomputes every cell. Best for dense, chaotic soups where most of the board changes. */
+    DENSE,
+    /**
+     * Only recomputes tiles which changed, or border a tile which changed, in the previous
+     * update. Best for boards where activity is confined to a few regions.
+     */
+    TILED,
+    /**
+     * Keeps a list of live cells and only visits them and their neighbors. Best for very
+     * sparse boards, such as a few spaceships on a large field.
+     */
+    LIVE_SET,
+    /**
+     * Replays a recorded cycle once the board is found to repeat exactly. Best for boards
+     * which have settled into oscillators.
+     */
+    MEMOIZED
+}
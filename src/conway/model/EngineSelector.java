@@ -0,0 +1,191 @@
+package conway.model;
+
+import java.util.logging.Logger;
+
+/**
+ * Samples the population and rate of change of a CellGrid as it updates and decides which
+ * engine suits the workload best. Decisions are logged at FINE on the conway.model.CellGrid
+ * logger, so they stay quiet by default. To review and tune them, set that logger and a
+ * handler to FINE, e.g. in a logging.properties file passed with
+ * -Djava.util.logging.config.file.
+ * @author caproven
+ */
+class EngineSelector {
+
+    /** Logger receiving every engine switch. */
+    private static final Logger LOG = Logger.getLogger(CellGrid.class.getName());
+    /** Number of generations between engine decisions. */
+    static final int SAMPLE_INTERVAL = 16;
+    /** Longest cycle the memoized engine looks for. */
+    static final int MAX_PERIOD = 15;
+    /** Largest number of cells the memoized engine may record across a whole cycle. */
+    private static final int MAX_MEMO_CELLS = 1 << 22;
+    /** Fraction of living cells below which the live cell set is used. */
+    private static final double SPARSE_DENSITY = 0.08;
+    /**
+     * Fraction of changing tiles below which the tiled engine is used. Kept low since every
+     * changed tile also causes its eight neighbors to be recomputed.
+     */
+    private static final double TILED_CHANGE_RATE = 0.15;
+    /**
+     * Factor by which a threshold is relaxed for the engine already in use, so that a
+     * workload hovering around a threshold does not switch back and forth.
+     */
+    private static final double HYSTERESIS = 1.25;
+    /** Number of generations to wait before looking for a cycle again after not finding one. */
+    private static final int PROBE_BACKOFF = 256;
+
+    /** Number of cells in the grid. */
+    private final int cells;
+    /** Number of tiles in the grid. */
+    private final int tiles;
+    /** Recent populations, indexed by generation modulo the history length. */
+    private final int[] populations = new int[MAX_PERIOD * 2];
+    /** Number of populations recorded since the history was last reset. */
+    private int recorded;
+    /** Total number of changed tiles over the current sample. */
+    private long changedTiles;
+    /** Number of generations observed in the current sample. */
+    private int sampled;
+    /** Generation before which no cycle will be looked for. */
+    private long probeAllowedAt;
+    /** Description of the most recent sample, used when logging decisions. */
+    private String lastSample = "no sample";
+
+    /**
+     * Constructs the selector for a grid of the given size.
+     * @param cells Number of cells in the grid
+     * @param tiles Number of tiles in the grid
+     */
+    EngineSelector(int cells, int tiles) {
+        this.cells = cells;
+        this.tiles = tiles;
+    }
+
+    /**
+     * Records the outcome of a single update.
+     * @param population Number of living cells after the update
+     * @param changed Number of tiles which changed during the update
+     */
+    void observe(int population, int changed) {
+        populations[recorded % populations.length] = population;
+        recorded++;
+        changedTiles += changed;
+        sampled++;
+    }
+
+    /**
+     * Forgets all observations, after the grid was edited or replaced.
+     */
+    void reset() {
+        recorded = 0;
+        changedTiles = 0;
+        sampled = 0;
+    }
+
+    /**
+     * Determines whether enough generations were observed to make a decision.
+     * @return True if a decision is due
+     */
+    boolean isSampleComplete() {
+        return sampled >= SAMPLE_INTERVAL;
+    }
+
+    /**
+     * Retrieves the longest cycle worth recording for this grid size.
+     * @return Maximum period to look for, or 0 if the grid is too large to memoize
+     */
+    int getMaxPeriod() {
+        return Math.min(MAX_PERIOD, MAX_MEMO_CELLS / cells);
+    }
+
+    /**
+     * Decides whether to start looking for a cycle. The population must have repeated with
+     * some period over the recent history, while the board is still changing.
+     * @param generation Current generation
+     * @return True if the board may have settled into a cycle
+     */
+    boolean shouldProbe(long generation) {
+        if (generation < probeAllowedAt || changedTiles == 0 || getMaxPeriod() < 2
+                || recorded < populations.length) {
+            return false;
+        }
+        for (int period = 1; period <= getMaxPeriod(); period++) {
+            boolean repeats = true;
+            for (int back = 0; back < populations.length - period && repeats; back++) {
+                repeats = population(back) == population(back + period);
+            }
+            if (repeats) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves a recorded population.
+     * @param back Number of generations before the most recent one
+     * @return Population at that generation
+     */
+    private int population(int back) {
+        return populations[(recorded - 1 - back) % populations.length];
+    }
+
+    /**
+     * Holds off looking for a cycle, after one was not found.
+     * @param generation Current generation
+     */
+    void probeFailed(long generation) {
+        probeAllowedAt = generation + PROBE_BACKOFF;
+        LOG.fine("Generation " + generation + ": no cycle of period <= " + getMaxPeriod()
+                + " found, retrying after " + probeAllowedAt);
+    }
+
+    /**
+     * Chooses the engine for the coming generations from the current sample, then starts a
+     * new sample.
+     * @param population Number of living cells
+     * @param current Engine currently in use
+     * @return Engine best suited to the sampled workload
+     */
+    Engine choose(int population, Engine current) {
+        double density = (double)population / cells;
+        double changeRate = (double)changedTiles / sampled / tiles;
+        changedTiles = 0;
+        sampled = 0;
+        lastSample = String.format("density %.3f, change rate %.3f", density, changeRate);
+        double sparseDensity = SPARSE_DENSITY;
+        double tiledChangeRate = TILED_CHANGE_RATE;
+        if (current == Engine.LIVE_SET) {
+            sparseDensity *= HYSTERESIS;
+        } else if (current == Engine.TILED) {
+            tiledChangeRate *= HYSTERESIS;
+        }
+        if (density < sparseDensity && changeRate > 0) {
+            return Engine.LIVE_SET;
+        } else if (changeRate < tiledChangeRate) {
+            return Engine.TILED;
+        }
+        return Engine.DENSE;
+    }
+
+    /**
+     * Describes the most recent sample, for logging the decision made from it.
+     * @return Density and change rate of the most recent sample
+     */
+    String describeSample() {
+        return lastSample;
+    }
+
+    /**
+     * Logs a change of engine at FINE.
+     * @param generation Generation at which the engine changes
+     * @param from Engine used until now
+     * @param to Engine used from now on
+     * @param reason Description of why the engine changed
+     */
+    static void logSwitch(long generation, Engine from, Engine to, String reason) {
+        LOG.fine("Generation " + generation + ": switching engine " + from + " -> " + to
+                + " (" + reason + ")");
+    }
+}
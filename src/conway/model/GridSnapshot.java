@@ -0,0 +1,155 @@
+package conway.model;
+
+/**
+ * Immutable view of a single generation of a CellGrid, safe to read from any thread while the
+ * grid keeps updating. Derived values such as the population are computed on first use and
+ * then remembered.
+ * @author caproven
+ */
+public class GridSnapshot {
+
+    /** Cell states of the generation. Shared with the grid, which never writes to it again. */
+    private final int[][] cells;
+    /** Generation the snapshot was taken at. */
+    private final long generation;
+    /** Number of living cells, or -1 if not yet counted. */
+    private volatile int population = -1;
+    /**
+     * Bounding box of the living cells as {x, y, width, height}, an empty array if there are
+     * none, or null if not yet computed.
+     */
+    private volatile int[] bounds;
+
+    /**
+     * Callback receiving the coords of living cells during region iteration.
+     * @author caproven
+     */
+    public interface CellVisitor {
+        /**
+         * Visits a single living cell.
+         * @param x X-coord of the cell
+         * @param y Y-coord of the cell
+         */
+        void visit(int x, int y);
+    }
+
+    /**
+     * Constructs the snapshot. Only CellGrid may hand out snapshots, as it guarantees the
+     * cells are never written to again.
+     * @param cells Cell states of the generation
+     * @param generation Generation the cell states belong to
+     */
+    GridSnapshot(int[][] cells, long generation) {
+        this.cells = cells;
+        this.generation = generation;
+    }
+
+    /**
+     * Retrieves the generation the snapshot was taken at.
+     * @return Generation of the snapshot
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Retrieves the number of horizontal cells.
+     * @return Width of the grid in cells
+     */
+    public int getWidth() {
+        return cells[0].length;
+    }
+
+    /**
+     * Retrieves the number of vertical cells.
+     * @return Height of the grid in cells
+     */
+    public int getHeight() {
+        return cells.length;
+    }
+
+    /**
+     * Determines whether the cell at the given coords is alive.
+     * @param x X-coord of the cell
+     * @param y Y-coord of the cell
+     * @return True if the cell is alive
+     */
+    public boolean isAlive(int x, int y) {
+        return cells[y][x] == 1;
+    }
+
+    /**
+     * Counts the living cells, only scanning the grid the first time it is asked for.
+     * @return Number of living cells
+     */
+    public int getPopulation() {
+        if (population == -1) {
+            int count = 0;
+            for (int y = 0; y < cells.length; y++) {
+                for (int x = 0; x < cells[y].length; x++) {
+                    count += cells[y][x];
+                }
+            }
+            population = count;
+        }
+        return population;
+    }
+
+    /**
+     * Retrieves the smallest region containing every living cell, only scanning the grid the
+     * first time it is asked for.
+     * @return Bounding box as {x, y, width, height}, or null if there are no living cells
+     */
+    public int[] getBoundingBox() {
+        if (bounds == null) {
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+            int maxX = -1, maxY = -1;
+            for (int y = 0; y < cells.length; y++) {
+                for (int x = 0; x < cells[y].length; x++) {
+                    if (cells[y][x] == 1) {
+                        minX = Math.min(minX, x);
+                        maxX = Math.max(maxX, x);
+                        minY = Math.min(minY, y);
+                        maxY = y;
+                    }
+                }
+            }
+            bounds = (maxX == -1) ? (new int[0])
+                    : (new int[] { minX, minY, maxX - minX + 1, maxY - minY + 1 });
+        }
+        return (bounds.length == 0) ? (null) : (bounds.clone());
+    }
+
+    /**
+     * Visits every living cell within a region, row by row. The region is clipped to the
+     * grid.
+     * @param x X-coord of the region's top left cell
+     * @param y Y-coord of the region's top left cell
+     * @param width Width of the region in cells
+     * @param height Height of the region in cells
+     * @param visitor Callback receiving each living cell
+     */
+    public void forEachAlive(int x, int y, int width, int height, CellVisitor visitor) {
+        int maxY = Math.min(cells.length, y + height);
+        int maxX = Math.min(cells[0].length, x + width);
+        for (int row = Math.max(0, y); row < maxY; row++) {
+            for (int col = Math.max(0, x); col < maxX; col++) {
+                if (cells[row][col] == 1) {
+                    visitor.visit(col, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the cell states into a new array which the caller is free to modify.
+     * @return 2D array of cell states (0: dead, 1: alive)
+     */
+    public int[][] toArray() {
+        int[][] copy = new int[cells.length][];
+        for (int y = 0; y < cells.length; y++) {
+            copy[y] = cells[y].clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,144 @@
+package conway.model;
+
+import java.util.Arrays;
+
+/**
+ * Sparse representation of a grid as the list of its living cells, used by the
+ * {@link Engine#LIVE_SET} engine. Each update only visits living cells and their neighbors.
+ * @author caproven
+ */
+class LiveCellSet {
+
+    /** Number of horizontal cells in the grid. */
+    private final int width;
+    /** Number of vertical cells in the grid. */
+    private final int height;
+    /** Indices (y * width + x) of the cells living in the current generation. */
+    private int[] live;
+    /** Number of entries in live. */
+    private int liveCount;
+    /** Indices of the cells living in the previous generation, still held by the other buffer. */
+    private int[] previous;
+    /** Number of entries in previous. */
+    private int previousCount;
+    /** Whether live reflects the current grid. */
+    private boolean liveValid;
+    /** Whether previous reflects the other buffer. */
+    private boolean previousValid;
+    /** Scratch live neighbor counts, kept at zero between updates. */
+    private final byte[] neighbors;
+    /** Scratch list of the cells with a nonzero neighbor count. */
+    private final int[] touched;
+
+    /**
+     * Constructs the set for a grid of the given size. Nothing is valid until the first
+     * update converts the grid.
+     * @param width Number of horizontal cells
+     * @param height Number of vertical cells
+     */
+    LiveCellSet(int width, int height) {
+        this.width = width;
+        this.height = height;
+        live = new int[width * height];
+        previous = new int[width * height];
+        neighbors = new byte[width * height];
+        touched = new int[width * height];
+    }
+
+    /**
+     * Marks the set as out of date, so the next update converts the grid again. Used when
+     * the grid is edited or another engine runs.
+     */
+    void invalidate() {
+        liveValid = false;
+        previousValid = false;
+    }
+
+    /**
+     * Retrieves the number of living cells after the last update.
+     * @return Population of the current generation
+     */
+    int getPopulation() {
+        return liveCount;
+    }
+
+    /**
+     * Computes the next generation into the incoming buffer.
+     * @param activeGrid Current generation
+     * @param incGrid Buffer receiving the next generation
+     * @param incStale Whether incGrid may hold something other than the previous generation
+     * @param changed Tiles changed by the update, marked as cells flip
+     * @return Number of tiles newly marked as changed
+     */
+    int step(int[][] activeGrid, int[][] incGrid, boolean incStale, boolean[][] changed) {
+        if (!liveValid) {
+            liveCount = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (activeGrid[y][x] == 1) {
+                        live[liveCount++] = y * width + x;
+                    }
+                }
+            }
+        }
+        // clear the incoming buffer, cheaply if its live cells are known
+        if (incStale || !previousValid) {
+            for (int y = 0; y < height; y++) {
+                Arrays.fill(incGrid[y], 0);
+            }
+        } else {
+            for (int i = 0; i < previousCount; i++) {
+                incGrid[previous[i] / width][previous[i] % width] = 0;
+            }
+        }
+
+        int touchedCount = 0;
+        for (int i = 0; i < liveCount; i++) {
+            int x = live[i] % width;
+            int y = live[i] / width;
+            for (int dy = -1; dy <= 1; dy++) {
+                int row = (y + dy + height) % height * width;
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx != 0 || dy != 0) {
+                        int index = row + (x + dx + width) % width;
+                        if (neighbors[index]++ == 0) {
+                            touched[touchedCount++] = index;
+                        }
+                    }
+                }
+            }
+        }
+
+        int changedTiles = 0;
+        // living cells without living neighbors were never touched, and die
+        for (int i = 0; i < liveCount; i++) {
+            if (neighbors[live[i]] == 0) {
+                changedTiles += CellGrid.markTile(changed, live[i] % width, live[i] / width);
+            }
+        }
+        // the current list becomes the previous one, and is replaced by the next generation
+        int[] swap = previous;
+        previous = live;
+        previousCount = liveCount;
+        live = swap;
+        liveCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int index = touched[i];
+            int x = index % width;
+            int y = index / width;
+            boolean alive = activeGrid[y][x] == 1;
+            boolean survives = neighbors[index] == 3 || (alive && neighbors[index] == 2);
+            if (survives) {
+                incGrid[y][x] = 1;
+                live[liveCount++] = index;
+            }
+            if (survives != alive) {
+                changedTiles += CellGrid.markTile(changed, x, y);
+            }
+            neighbors[index] = 0;
+        }
+        liveValid = true;
+        previousValid = true;
+        return changedTiles;
+    }
+}
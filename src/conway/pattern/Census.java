@@ -0,0 +1,271 @@
+package conway.pattern;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import conway.model.CellGrid;
+import conway.model.GridSnapshot;
+
+/**
+ * Counts the known objects (still lifes, oscillators and spaceships) making up a generation.
+ * Live cells are grouped into objects, each object is put in its canonical orientation and
+ * looked up in a hash index holding every phase of every known object. Since a census scans
+ * the whole grid, it is only taken every Nth generation. Counting works on snapshots, so it
+ * may also run on a separate analysis thread.
+ * @author caproven
+ */
+public class Census {
+
+    /** Name counted for objects which are not in the index. */
+    public static final String UNKNOWN = "unknown";
+    /**
+     * Largest distance (in cells, diagonals counting as one) between two live cells belonging
+     * to the same object. A distance of 2 keeps oscillators and spaceships whose phases are
+     * not fully connected, such as the toad, together as a single object. Objects which are
+     * not known as a whole are split into their 8-connected pieces before being counted.
+     */
+    private static final int LINK_DISTANCE = 2;
+    /**
+     * Known objects as {name, period, cells}. Cell rows are separated by '/', with 'O' being a
+     * live cell and '.' a dead one.
+     */
+    private static final String[][] KNOWN_OBJECTS = {
+        { "block", "1", "OO/OO" },
+        { "beehive", "1", ".OO./O..O/.OO." },
+        { "loaf", "1", ".OO./O..O/.O.O/..O." },
+        { "boat", "1", "OO./O.O/.O." },
+        { "ship", "1", "OO./O.O/.OO" },
+        { "tub", "1", ".O./O.O/.O." },
+        { "pond", "1", ".OO./O..O/O..O/.OO." },
+        { "barge", "1", ".O../O.O./.O.O/..O." },
+        { "blinker", "2", "OOO" },
+        { "toad", "2", ".OOO/OOO." },
+        { "beacon", "2", "OO../OO../..OO/..OO" },
+        { "pulsar", "3", "..OOO...OOO../............./O....O.O....O/O....O.O....O/"
+                + "O....O.O....O/..OOO...OOO../............./..OOO...OOO../"
+                + "O....O.O....O/O....O.O....O/O....O.O....O/............./"
+                + "..OOO...OOO.." },
+        { "glider", "4", ".O./..O/OOO" },
+        { "lwss", "4", ".O..O/O..../O...O/OOOO." },
+        { "mwss", "4", "...O../.O...O/O...../O....O/OOOOO." },
+        { "hwss", "4", "...OO../.O....O/O....../O.....O/OOOOOO." }
+    };
+    /** Every phase of every known object in canonical orientation, mapped to its name. */
+    private static final Map<Pattern, String> INDEX = buildIndex();
+
+    /**
+     * Source of cell states for object grouping, wrapping around its edges.
+     * @author caproven
+     */
+    private interface Cells {
+        /**
+         * Determines whether the cell at the given coords is alive.
+         * @param x X-coord of the cell, within the source's width
+         * @param y Y-coord of the cell, within the source's height
+         * @return True if the cell is alive
+         */
+        boolean isAlive(int x, int y);
+    }
+
+    /** A census is only taken on generations divisible by the interval. */
+    private final int interval;
+    /** Counts from the most recent census, or null if none has been taken. */
+    private Map<String, Integer> latest;
+
+    /**
+     * Constructs the census, sampling every Nth generation.
+     * @param interval Number of generations between censuses
+     * @throws IllegalArgumentException if interval is not positive
+     */
+    public Census(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval must be positive.");
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * Takes a census of the grid if its current generation falls on the sampling interval.
+     * @param grid Grid to be counted
+     * @return Object counts by name, or null if this generation is not sampled
+     */
+    public Map<String, Integer> sample(CellGrid grid) {
+        if (grid.getGeneration() % interval != 0) {
+            return null;
+        }
+        latest = count(grid.snapshot());
+        return latest;
+    }
+
+    /**
+     * Retrieves the counts from the most recent census.
+     * @return Object counts by name, or null if no census has been taken
+     */
+    public Map<String, Integer> getLatest() {
+        return latest;
+    }
+
+    /**
+     * Counts the objects making up a generation. An object which is not known as a whole may
+     * be several known objects lying close together, so it is split into its 8-connected
+     * pieces, each of which is looked up on its own.
+     * @param grid Snapshot of the generation to be counted
+     * @return Unmodifiable map of object counts sorted by name, with unrecognized objects
+     * counted under {@link #UNKNOWN}
+     */
+    public static Map<String, Integer> count(GridSnapshot grid) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (Pattern object : objects(grid)) {
+            String name = INDEX.get(object.canonical());
+            if (name != null) {
+                increment(counts, name);
+                continue;
+            }
+            for (Pattern piece : pieces(object)) {
+                name = INDEX.get(piece.canonical());
+                increment(counts, (name == null) ? (UNKNOWN) : (name));
+            }
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Adds one to the count of a name.
+     * @param counts Object counts by name
+     * @param name Name whose count is increased
+     */
+    private static void increment(Map<String, Integer> counts, String name) {
+        Integer count = counts.get(name);
+        counts.put(name, (count == null) ? (1) : (count + 1));
+    }
+
+    /**
+     * Splits the live cells of a generation into objects, grouping cells within
+     * {@link #LINK_DISTANCE} of each other. Objects may wrap around the edges of the grid.
+     * @param grid Snapshot of the generation to be split
+     * @return List of objects, each trimmed to its bounding box
+     */
+    static List<Pattern> objects(final GridSnapshot grid) {
+        return group(grid.getWidth(), grid.getHeight(), new Cells() {
+            @Override
+            public boolean isAlive(int x, int y) {
+                return grid.isAlive(x, y);
+            }
+        }, LINK_DISTANCE);
+    }
+
+    /**
+     * Splits an object into its 8-connected pieces.
+     * @param object Object to be split
+     * @return List of pieces, each trimmed to its bounding box
+     */
+    static List<Pattern> pieces(Pattern object) {
+        // a dead border keeps pieces from joining around the edges
+        final int[][] padded = new int[object.getHeight() + 2][object.getWidth() + 2];
+        int[][] cells = object.getCells();
+        for (int y = 0; y < cells.length; y++) {
+            System.arraycopy(cells[y], 0, padded[y + 1], 1, cells[y].length);
+        }
+        return group(padded[0].length, padded.length, new Cells() {
+            @Override
+            public boolean isAlive(int x, int y) {
+                return padded[y][x] == 1;
+            }
+        }, 1);
+    }
+
+    /**
+     * Groups live cells lying within a given distance of each other, wrapping around the
+     * edges of the source.
+     * @param width Number of horizontal cells in the source
+     * @param height Number of vertical cells in the source
+     * @param grid Source of cell states
+     * @param linkDistance Largest distance between two cells of the same group
+     * @return List of groups, each trimmed to its bounding box
+     */
+    private static List<Pattern> group(int width, int height, Cells grid, int linkDistance) {
+        boolean[][] visited = new boolean[height][width];
+        List<Pattern> objects = new ArrayList<>();
+        // unwrapped coords of the cells in the current object, {x0, y0, x1, y1, ...}
+        int[] members = new int[64];
+
+        for (int startY = 0; startY < height; startY++) {
+            for (int startX = 0; startX < width; startX++) {
+                if (!grid.isAlive(startX, startY) || visited[startY][startX]) {
+                    continue;
+                }
+                visited[startY][startX] = true;
+                members[0] = startX;
+                members[1] = startY;
+                int size = 1;
+                int minX = startX, maxX = startX, minY = startY, maxY = startY;
+                // breadth first search, with members doubling as the queue
+                for (int next = 0; next < size; next++) {
+                    int ux = members[next * 2];
+                    int uy = members[next * 2 + 1];
+                    for (int dy = -linkDistance; dy <= linkDistance; dy++) {
+                        for (int dx = -linkDistance; dx <= linkDistance; dx++) {
+                            int x = Math.floorMod(ux + dx, width);
+                            int y = Math.floorMod(uy + dy, height);
+                            if (!grid.isAlive(x, y) || visited[y][x]) {
+                                continue;
+                            }
+                            visited[y][x] = true;
+                            if (size * 2 == members.length) {
+                                int[] grown = new int[members.length * 2];
+                                System.arraycopy(members, 0, grown, 0, members.length);
+                                members = grown;
+                            }
+                            members[size * 2] = ux + dx;
+                            members[size * 2 + 1] = uy + dy;
+                            size++;
+                            minX = Math.min(minX, ux + dx);
+                            maxX = Math.max(maxX, ux + dx);
+                            minY = Math.min(minY, uy + dy);
+                            maxY = Math.max(maxY, uy + dy);
+                        }
+                    }
+                }
+                int[][] block = new int[maxY - minY + 1][maxX - minX + 1];
+                for (int i = 0; i < size; i++) {
+                    block[members[i * 2 + 1] - minY][members[i * 2] - minX] = 1;
+                }
+                objects.add(Pattern.fromCells("", block));
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Builds the index of known objects by running each one through its full period and
+     * canonicalizing every phase.
+     * @return Map from canonical phase to object name
+     */
+    private static Map<Pattern, String> buildIndex() {
+        Map<Pattern, String> index = new HashMap<>();
+        for (String[] known : KNOWN_OBJECTS) {
+            String[] rows = known[2].split("/");
+            int[][] cells = new int[rows.length][rows[0].length()];
+            for (int y = 0; y < rows.length; y++) {
+                for (int x = 0; x < rows[y].length(); x++) {
+                    cells[y][x] = (rows[y].charAt(x) == 'O') ? (1) : (0);
+                }
+            }
+            // margin leaves room for spaceships to travel and objects to grow
+            int margin = 2 * LINK_DISTANCE + 4;
+            CellGrid grid = new CellGrid(cells[0].length + margin * 2, rows.length + margin * 2);
+            grid.stamp(cells, margin, margin);
+            for (int phase = 0; phase < Integer.parseInt(known[1]); phase++) {
+                for (Pattern object : objects(grid.snapshot())) {
+                    index.put(object.canonical(), known[0]);
+                }
+                grid.updateGrid();
+            }
+        }
+        return index;
+    }
+}
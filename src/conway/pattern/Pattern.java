@@ -0,0 +1,216 @@
+package conway.pattern;
+
+import java.util.Arrays;
+
+import conway.model.CellGrid;
+
+/**
+ * Immutable block of cell states trimmed to the bounding box of its live cells, which can be
+ * stamped into a CellGrid at any position and rotation.
+ * @author caproven
+ */
+public class Pattern {
+
+    /** Name identifying the pattern, such as the file it was read from. */
+    private final String name;
+    /** Cell states (0: dead, 1: alive) of the pattern, indexed by row then column. */
+    private final int[][] cells;
+    /**
+     * Lazily computed clockwise rotations of the pattern, indexed by number of quarter turns.
+     * Index 0 is always the pattern itself.
+     */
+    private final Pattern[] rotations;
+    /** Lazily computed canonical orientation of the pattern. */
+    private Pattern canonical;
+
+    /**
+     * Constructs the pattern from cell states which are already trimmed.
+     * @param name Name identifying the pattern
+     * @param cells Trimmed cell states, owned by the pattern from now on
+     */
+    private Pattern(String name, int[][] cells) {
+        this.name = name;
+        this.cells = cells;
+        rotations = new Pattern[4];
+        rotations[0] = this;
+    }
+
+    /**
+     * Creates a pattern from a block of cell states, trimming away any dead rows and columns
+     * surrounding the live cells.
+     * @param name Name identifying the pattern
+     * @param block 2D array of cell states (0: dead, 1: alive)
+     * @return Pattern holding only the bounding box of the block's live cells
+     */
+    public static Pattern fromCells(String name, int[][] block) {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = -1, maxY = -1;
+        for (int y = 0; y < block.length; y++) {
+            for (int x = 0; x < block[y].length; x++) {
+                if (block[y][x] == 1) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX == -1) { // no live cells
+            return new Pattern(name, new int[0][0]);
+        }
+        int[][] trimmed = new int[maxY - minY + 1][];
+        for (int y = minY; y <= maxY; y++) {
+            trimmed[y - minY] = Arrays.copyOfRange(block[y], minX, maxX + 1);
+        }
+        return new Pattern(name, trimmed);
+    }
+
+    /**
+     * Retrieves the name of the pattern.
+     * @return Name identifying the pattern
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the width of the pattern's bounding box.
+     * @return Width in cells, or 0 if the pattern has no live cells
+     */
+    public int getWidth() {
+        return (cells.length == 0) ? (0) : (cells[0].length);
+    }
+
+    /**
+     * Retrieves the height of the pattern's bounding box.
+     * @return Height in cells, or 0 if the pattern has no live cells
+     */
+    public int getHeight() {
+        return cells.length;
+    }
+
+    /**
+     * Retrieves a copy of the pattern's cell states.
+     * @return 2D array of cell states (0: dead, 1: alive)
+     */
+    public int[][] getCells() {
+        int[][] copy = new int[cells.length][];
+        for (int y = 0; y < cells.length; y++) {
+            copy[y] = cells[y].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Retrieves the pattern rotated clockwise. Rotations are computed once and reused.
+     * @param quarterTurns Number of clockwise quarter turns, may be negative
+     * @return Rotated pattern
+     */
+    public synchronized Pattern rotate(int quarterTurns) {
+        int turns = Math.floorMod(quarterTurns, 4);
+        if (rotations[turns] == null) {
+            Pattern previous = rotate(turns - 1);
+            int[][] src = previous.cells;
+            int[][] rotated = new int[previous.getWidth()][previous.getHeight()];
+            for (int y = 0; y < src.length; y++) {
+                for (int x = 0; x < src[y].length; x++) {
+                    rotated[x][src.length - 1 - y] = src[y][x];
+                }
+            }
+            rotations[turns] = new Pattern(name, rotated);
+        }
+        return rotations[turns];
+    }
+
+    /**
+     * Retrieves the pattern mirrored from left to right.
+     * @return Reflected pattern
+     */
+    public Pattern reflect() {
+        int[][] reflected = new int[cells.length][];
+        for (int y = 0; y < cells.length; y++) {
+            reflected[y] = new int[cells[y].length];
+            for (int x = 0; x < cells[y].length; x++) {
+                reflected[y][cells[y].length - 1 - x] = cells[y][x];
+            }
+        }
+        return new Pattern(name, reflected);
+    }
+
+    /**
+     * Retrieves the canonical orientation of the pattern: the smallest of its eight rotations
+     * and reflections. Two patterns have equal canonical orientations exactly when one can be
+     * rotated and reflected into the other.
+     * @return Pattern in canonical orientation
+     */
+    public synchronized Pattern canonical() {
+        if (canonical == null) {
+            Pattern reflected = reflect();
+            Pattern smallest = this;
+            for (int turns = 0; turns < 4; turns++) {
+                Pattern[] candidates = { rotate(turns), reflected.rotate(turns) };
+                for (Pattern candidate : candidates) {
+                    if (compare(candidate.cells, smallest.cells) < 0) {
+                        smallest = candidate;
+                    }
+                }
+            }
+            canonical = smallest;
+        }
+        return canonical;
+    }
+
+    /**
+     * Orders blocks of cell states by height, then width, then cell states in row order.
+     * @param a First block to compare
+     * @param b Second block to compare
+     * @return Negative if a comes first, positive if b comes first, or 0 if they are equal
+     */
+    private static int compare(int[][] a, int[][] b) {
+        if (a.length != b.length) {
+            return a.length - b.length;
+        }
+        if (a.length == 0) {
+            return 0;
+        }
+        if (a[0].length != b[0].length) {
+            return a[0].length - b[0].length;
+        }
+        for (int y = 0; y < a.length; y++) {
+            for (int x = 0; x < a[y].length; x++) {
+                if (a[y][x] != b[y][x]) {
+                    return a[y][x] - b[y][x];
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stamps the pattern into a grid, replacing every cell within its bounding box.
+     * @param grid Grid receiving the pattern
+     * @param x X-coord of the grid cell receiving the pattern's top left cell
+     * @param y Y-coord of the grid cell receiving the pattern's top left cell
+     * @param quarterTurns Number of clockwise quarter turns to rotate the pattern by
+     * @throws IllegalArgumentException if the rotated pattern is larger than the grid
+     */
+    public void stamp(CellGrid grid, int x, int y, int quarterTurns) {
+        grid.stamp(rotate(quarterTurns).cells, x, y);
+    }
+
+    /**
+     * Patterns are equal when their cell states match, regardless of their names.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Pattern)) {
+            return false;
+        }
+        return Arrays.deepEquals(cells, ((Pattern)o).cells);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(cells);
+    }
+}
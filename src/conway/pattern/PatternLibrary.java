@@ -0,0 +1,168 @@
+package conway.pattern;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import conway.model.CellGrid;
+import conway.util.FileIO;
+
+/**
+ * Index of the pattern files within a directory. Each file is indexed by name along with the
+ * bounding box of its live cells, while parsed patterns are kept in a least recently used
+ * cache bounded by the total number of cells it holds.
+ * @author caproven
+ */
+public class PatternLibrary {
+
+    /** Directory holding the pattern files. */
+    private final File directory;
+    /** Bounding box of each indexed pattern as {width, height}, sorted by name. */
+    private final Map<String, int[]> index;
+    /** Parsed patterns, ordered from least to most recently used. */
+    private final LinkedHashMap<String, Pattern> cache;
+    /** Maximum total number of cells held by the cached patterns. */
+    private final int maxCachedCells;
+    /** Total number of cells currently held by the cached patterns. */
+    private int cachedCells;
+
+    /**
+     * Constructs the library, indexing every readable pattern file in the directory. Files
+     * which are not in the cell state format (such as notes) are left out of the index.
+     * @param directory Directory holding the pattern files
+     * @param maxCachedCells Maximum total number of cells held by cached patterns
+     * @throws IOException if the directory cannot be listed
+     */
+    public PatternLibrary(File directory, int maxCachedCells) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Could not list " + directory + ".");
+        }
+        this.directory = directory;
+        this.maxCachedCells = maxCachedCells;
+        index = new TreeMap<>();
+        cache = new LinkedHashMap<>(16, 0.75f, true); // access order
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            try {
+                Pattern pattern = parse(file);
+                index.put(file.getName(), new int[] { pattern.getWidth(), pattern.getHeight() });
+                cache(file.getName(), pattern);
+            } catch (IOException ioe) {
+                // not a pattern file, leave it out of the index
+            }
+        }
+    }
+
+    /**
+     * Retrieves the names of every indexed pattern.
+     * @return Sorted, unmodifiable list of pattern names
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(new ArrayList<>(index.keySet()));
+    }
+
+    /**
+     * Retrieves the bounding box of an indexed pattern without parsing it.
+     * @param name Name of the pattern
+     * @return Bounding box as {width, height}, or null if no such pattern is indexed
+     */
+    public int[] getBounds(String name) {
+        int[] bounds = index.get(name);
+        return (bounds == null) ? (null) : (bounds.clone());
+    }
+
+    /**
+     * Finds the patterns whose bounding box fits within the given dimensions in any rotation.
+     * @param width Available width in cells
+     * @param height Available height in cells
+     * @return Sorted list of the names of fitting patterns
+     */
+    public List<String> findFitting(int width, int height) {
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : index.entrySet()) {
+            int[] bounds = entry.getValue();
+            if ((bounds[0] <= width && bounds[1] <= height)
+                    || (bounds[1] <= width && bounds[0] <= height)) {
+                names.add(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Retrieves a pattern, parsing its file only if it is not already cached.
+     * @param name Name of the pattern
+     * @return Parsed pattern
+     * @throws IllegalArgumentException if no such pattern is indexed
+     * @throws IOException if the pattern file can no longer be read
+     */
+    public synchronized Pattern get(String name) throws IOException {
+        if (!index.containsKey(name)) {
+            throw new IllegalArgumentException("Unknown pattern: " + name);
+        }
+        Pattern pattern = cache.get(name);
+        if (pattern == null) {
+            pattern = parse(new File(directory, name));
+            cache(name, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Stamps a pattern into a grid, replacing every cell within its rotated bounding box.
+     * @param grid Grid receiving the pattern
+     * @param name Name of the pattern
+     * @param x X-coord of the grid cell receiving the pattern's top left cell
+     * @param y Y-coord of the grid cell receiving the pattern's top left cell
+     * @param quarterTurns Number of clockwise quarter turns to rotate the pattern by
+     * @throws IllegalArgumentException if no such pattern is indexed or it exceeds the grid
+     * @throws IOException if the pattern file can no longer be read
+     */
+    public void stamp(CellGrid grid, String name, int x, int y, int quarterTurns)
+            throws IOException {
+        get(name).stamp(grid, x, y, quarterTurns);
+    }
+
+    /**
+     * Reads and trims the pattern held by a file.
+     * @param file File holding the pattern
+     * @return Parsed pattern named after the file
+     * @throws IOException if the file is invalid or cannot be read
+     */
+    private static Pattern parse(File file) throws IOException {
+        return Pattern.fromCells(file.getName(), FileIO.read(file.getPath()));
+    }
+
+    /**
+     * Adds a pattern to the cache, evicting the least recently used patterns until the cache
+     * is back within its cell limit. Patterns larger than the limit are never cached.
+     * @param name Name of the pattern
+     * @param pattern Parsed pattern
+     */
+    private synchronized void cache(String name, Pattern pattern) {
+        int size = pattern.getWidth() * pattern.getHeight();
+        if (size > maxCachedCells) {
+            return;
+        }
+        Pattern replaced = cache.put(name, pattern);
+        if (replaced != null) {
+            cachedCells -= replaced.getWidth() * replaced.getHeight();
+        }
+        cachedCells += size;
+        Iterator<Pattern> eldest = cache.values().iterator();
+        while (cachedCells > maxCachedCells) {
+            Pattern evicted = eldest.next();
+            cachedCells -= evicted.getWidth() * evicted.getHeight();
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package conway.sweep;
+
+/**
+ * Outcome of running a single soup until it stabilized or reached the generation cap.
+ * @author caproven
+ */
+public class RunResult {
+
+    /** Header line matching the columns produced by {@link #toCsv()}. */
+    public static final String CSV_HEADER =
+            "width,height,density,seed,stabilized,exact,lifetime,period,final_population,"
+            + "millis";
+
+    /** Spec of the soup that was run. */
+    private final SoupSpec spec;
+    /**
+     * Generation at which the soup first entered its final cycle, or the generation cap if it
+     * never stabilized.
+     */
+    private final long lifetime;
+    /**
+     * Period of the final cycle (1 for still lifes), or 0 if the soup never stabilized. If the
+     * state did not repeat exactly, this is the period of the population instead.
+     */
+    private final int period;
+    /**
+     * Whether the soup repeated a state exactly, rather than only repeating its population.
+     */
+    private final boolean exact;
+    /** Number of living cells once the run ended. */
+    private final int finalPopulation;
+    /** Wall clock time the run took in milliseconds. */
+    private final long millis;
+
+    /**
+     * Constructs the result of a finished run.
+     * @param spec Spec of the soup that was run
+     * @param lifetime Generation at which the final cycle began, or the generation cap
+     * @param period Period of the final cycle, or 0 if the run never stabilized
+     * @param exact Whether a state repeated exactly, rather than only the population
+     * @param finalPopulation Number of living cells once the run ended
+     * @param millis Wall clock time the run took in milliseconds
+     */
+    public RunResult(SoupSpec spec, long lifetime, int period, boolean exact,
+            int finalPopulation, long millis) {
+        this.spec = spec;
+        this.lifetime = lifetime;
+        this.period = period;
+        this.exact = exact;
+        this.finalPopulation = finalPopulation;
+        this.millis = millis;
+    }
+
+    /**
+     * Retrieves the spec of the soup that was run.
+     * @return Spec of the soup
+     */
+    public SoupSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Determines whether the soup settled into a cycle before the generation cap.
+     * @return True if the soup stabilized
+     */
+    public boolean isStabilized() {
+        return period > 0;
+    }
+
+    /**
+     * Determines whether the soup repeated a state exactly. Soups holding spaceships are only
+     * detected by their population repeating, and report false.
+     * @return True if a state repeated exactly
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Retrieves the generation at which the final cycle began.
+     * @return Lifetime of the soup, or the generation cap if it never stabilized
+     */
+    public long getLifetime() {
+        return lifetime;
+    }
+
+    /**
+     * Retrieves the period of the final cycle.
+     * @return Period of the final cycle, or 0 if the soup never stabilized
+     */
+    public int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Retrieves the number of living cells once the run ended.
+     * @return Final population
+     */
+    public int getFinalPopulation() {
+        return finalPopulation;
+    }
+
+    /**
+     * Retrieves the wall clock time the run took.
+     * @return Duration of the run in milliseconds
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Formats the result as a single CSV line, in the column order of {@link #CSV_HEADER}.
+     * @return CSV representation of the result
+     */
+    public String toCsv() {
+        return spec.getWidth() + "," + spec.getHeight() + "," + spec.getDensity() + ","
+                + spec.getSeed() + "," + isStabilized() + "," + exact + "," + lifetime + ","
+                + period + "," + finalPopulation + "," + millis;
+    }
+
+    /**
+     * Formats the result as a single line JSON object.
+     * @return JSON representation of the result
+     */
+    public String toJson() {
+        return "{\"width\":" + spec.getWidth() + ",\"height\":" + spec.getHeight()
+                + ",\"density\":" + spec.getDensity() + ",\"seed\":" + spec.getSeed()
+                + ",\"stabilized\":" + isStabilized() + ",\"exact\":" + exact
+                + ",\"lifetime\":" + lifetime
+                + ",\"period\":" + period + ",\"final_population\":" + finalPopulation
+                + ",\"millis\":" + millis + "}";
+    }
+}
@@ -0,0 +1,86 @@
+package conway.sweep;
+
+import java.util.Random;
+
+import conway.model.CellGrid;
+
+/**
+ * Describes a single random soup experiment: the board size, the starting density and the
+ * seed used to generate it. Identical specs always produce identical soups.
+ * @author caproven
+ */
+public class SoupSpec {
+
+    /** Number of horizontal cells in the board. */
+    private final int width;
+    /** Number of vertical cells in the board. */
+    private final int height;
+    /** Probability that each cell starts alive. */
+    private final double density;
+    /** Seed for the random number generator filling the board. */
+    private final long seed;
+
+    /**
+     * Constructs the spec with the given board size, density and seed.
+     * @param width Number of horizontal cells
+     * @param height Number of vertical cells
+     * @param density Probability in the range [0, 1] that a cell starts alive
+     * @param seed Seed used to generate the soup
+     * @throws IllegalArgumentException if the board is smaller than 3x3 or density is outside
+     * of [0, 1]
+     */
+    public SoupSpec(int width, int height, double density, long seed) {
+        if (width < 3 || height < 3) {
+            throw new IllegalArgumentException("Board cannot be smaller than 3x3.");
+        }
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("Density must be within [0, 1].");
+        }
+        this.width = width;
+        this.height = height;
+        this.density = density;
+        this.seed = seed;
+    }
+
+    /**
+     * Creates a new CellGrid filled with the soup described by this spec.
+     * @return Freshly seeded CellGrid at generation 0
+     */
+    public CellGrid createGrid() {
+        CellGrid grid = new CellGrid(width, height);
+        grid.randomize(density, new Random(seed));
+        return grid;
+    }
+
+    /**
+     * Retrieves the number of horizontal cells.
+     * @return Board width in cells
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieves the number of vertical cells.
+     * @return Board height in cells
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Retrieves the starting density.
+     * @return Probability that each cell starts alive
+     */
+    public double getDensity() {
+        return density;
+    }
+
+    /**
+     * Retrieves the seed of the soup.
+     * @return Seed used to generate the soup
+     */
+    public long getSeed() {
+        return seed;
+    }
+}
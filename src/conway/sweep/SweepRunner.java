@@ -0,0 +1,302 @@
+package conway.sweep;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import conway.model.CellGrid;
+
+/**
+ * Runs a parameter sweep of independent random soups concurrently, streaming one result per
+ * soup to a CSV or JSON Lines file as runs complete. Each soup is run until it settles into a
+ * cycle or reaches the generation cap. A soup has settled once a state repeats exactly, or
+ * once its population has repeated with a fixed period for a window of generations. The
+ * latter catches ash holding spaceships, which on a wrapping board take far longer to repeat
+ * a state exactly. It is only a heuristic: a spaceship still in flight when the window ends
+ * may yet collide with the ash. By default the window lasts long enough for a glider to cross
+ * the whole board, 4 * max(width, height) + maxPeriod generations.
+ * @author caproven
+ */
+public class SweepRunner {
+
+    /** Default longest cycle detected. Covers still lifes and common oscillators up to p15. */
+    public static final int DEFAULT_MAX_PERIOD = 15;
+    /** Number of queued runs allowed per worker thread before waiting on results. */
+    private static final int RUNS_PER_THREAD = 4;
+
+    /** Soups to be run, in the order they are submitted. */
+    private final List<SoupSpec> specs;
+    /** Maximum number of generations a single soup is run for. */
+    private final long maxGenerations;
+    /** Longest cycle detected, both for exact repeats and for population. */
+    private final int maxPeriod;
+    /**
+     * Number of generations the population must repeat with a fixed period before a soup
+     * counts as settled without an exact repeat, or 0 to scale the window with each board.
+     */
+    private final int populationWindow;
+    /** Number of worker threads running soups concurrently. */
+    private final int threads;
+
+    /**
+     * Constructs the runner for the given soups.
+     * @param specs Soups to be run
+     * @param maxGenerations Maximum number of generations a single soup is run for
+     * @param maxPeriod Longest cycle detected as the soup settling
+     * @param populationWindow Number of generations the population must repeat for without
+     * an exact repeat, or 0 to use 4 * max(width, height) + maxPeriod for each board
+     * @param threads Number of worker threads to run soups on
+     * @throws IllegalArgumentException if maxGenerations, maxPeriod or threads is not positive,
+     * or populationWindow is negative
+     */
+    public SweepRunner(List<SoupSpec> specs, long maxGenerations, int maxPeriod,
+            int populationWindow, int threads) {
+        if (maxGenerations < 1 || maxPeriod < 1 || threads < 1 || populationWindow < 0) {
+            throw new IllegalArgumentException(
+                    "Generation cap, period and thread count must be positive, and the"
+                    + " population window cannot be negative.");
+        }
+        this.populationWindow = populationWindow;
+        this.specs = specs;
+        this.maxGenerations = maxGenerations;
+        this.maxPeriod = maxPeriod;
+        this.threads = threads;
+    }
+
+    /**
+     * Runs every soup, writing each result to the given stream as soon as its run completes.
+     * Results are therefore written in completion order rather than submission order. Only a
+     * bounded number of runs are queued at once, so sweeps of any size use constant memory.
+     * @param out Stream the results are written to
+     * @param json Whether results are written as JSON Lines (True) or CSV (False)
+     * @throws InterruptedException if interrupted while waiting on a run
+     * @throws ExecutionException if a run fails
+     */
+    public void run(PrintStream out, boolean json) throws InterruptedException,
+            ExecutionException {
+        if (!json) {
+            out.println(RunResult.CSV_HEADER);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<RunResult> runs = new ExecutorCompletionService<>(pool);
+        try {
+            Iterator<SoupSpec> pending = specs.iterator();
+            int inFlight = 0;
+            while (pending.hasNext() || inFlight > 0) {
+                while (pending.hasNext() && inFlight < threads * RUNS_PER_THREAD) {
+                    final SoupSpec spec = pending.next();
+                    runs.submit(new Callable<RunResult>() {
+                        @Override
+                        public RunResult call() {
+                            return runSoup(spec, maxGenerations, maxPeriod,
+                                    populationWindow);
+                        }
+                    });
+                    inFlight++;
+                }
+                RunResult result = runs.take().get();
+                inFlight--;
+                out.println(json ? (result.toJson()) : (result.toCsv()));
+            }
+        } finally {
+            pool.shutdownNow();
+            out.flush();
+        }
+    }
+
+    /**
+     * Runs a single soup until it settles into a cycle of at most maxPeriod generations or
+     * reaches the generation cap.
+     * @param spec Soup to be run
+     * @param maxGenerations Maximum number of generations to run for
+     * @param maxPeriod Longest cycle detected
+     * @param populationWindow Number of generations the population must repeat for without
+     * an exact repeat, or 0 to scale the window with the board
+     * @return Result of the run
+     */
+    static RunResult runSoup(SoupSpec spec, long maxGenerations, int maxPeriod,
+            int populationWindow) {
+        long start = System.currentTimeMillis();
+        // long enough for a glider to cross the board and hit any ash in its path
+        int window = (populationWindow > 0) ? (populationWindow)
+                : (4 * Math.max(spec.getWidth(), spec.getHeight()) + maxPeriod);
+        CellGrid grid = spec.createGrid();
+        // rings of the previous maxPeriod states and populations, indexed by
+        // generation % maxPeriod
+        int[][][] history = new int[maxPeriod][spec.getHeight()][spec.getWidth()];
+        int[] hashes = new int[maxPeriod];
+        int[] populations = new int[maxPeriod];
+        // consecutive generations whose population matched the one period generations before
+        int[] populationRuns = new int[maxPeriod + 1];
+
+        long lifetime = maxGenerations;
+        int period = 0;
+        boolean exact = false;
+        remember(grid, Arrays.deepHashCode(grid.getGrid()), history, hashes, populations);
+        while (period == 0 && grid.getGeneration() < maxGenerations) {
+            grid.updateGrid();
+            long generation = grid.getGeneration();
+            int[][] current = grid.getGrid();
+            int population = grid.getPopulation();
+            int hash = Arrays.deepHashCode(current);
+            for (int k = 1; k <= maxPeriod && k <= generation; k++) {
+                int slot = (int)((generation - k) % maxPeriod);
+                if (hashes[slot] == hash && Arrays.deepEquals(history[slot], current)) {
+                    period = k;
+                    lifetime = generation - k;
+                    exact = true;
+                    break;
+                }
+            }
+            for (int k = 1; k <= maxPeriod && k <= generation && period == 0; k++) {
+                int slot = (int)((generation - k) % maxPeriod);
+                populationRuns[k] = (populations[slot] == population) ? (populationRuns[k] + 1)
+                        : (0);
+                if (populationRuns[k] >= window) {
+                    period = k;
+                    // the population has repeated since period generations before the run
+                    lifetime = Math.max(0, generation - populationRuns[k] + 1 - k);
+                }
+            }
+            remember(grid, hash, history, hashes, populations);
+        }
+
+        return new RunResult(spec, lifetime, period, exact, grid.getPopulation(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Copies the current state of the grid into its slot of the history rings.
+     * @param grid Grid whose state is to be remembered
+     * @param hash Hash of the grid's current state
+     * @param history Ring of previous states
+     * @param hashes Hashes of the states held in the history ring
+     * @param populations Populations of the states held in the history ring
+     */
+    private static void remember(CellGrid grid, int hash, int[][][] history, int[] hashes,
+            int[] populations) {
+        int slot = (int)(grid.getGeneration() % history.length);
+        int[][] current = grid.getGrid();
+        for (int y = 0; y < current.length; y++) {
+            System.arraycopy(current[y], 0, history[slot][y], 0, current[y].length);
+        }
+        hashes[slot] = hash;
+        populations[slot] = grid.getPopulation();
+    }
+
+    /**
+     * Builds the cartesian product of the given sweep parameters.
+     * @param sizes Board sizes, each as {width, height}
+     * @param densities Starting densities
+     * @param seeds Number of seeds per size and density
+     * @param seedBase First seed, incremented for each following soup
+     * @return Specs of every soup in the sweep
+     */
+    public static List<SoupSpec> product(List<int[]> sizes, List<Double> densities, int seeds,
+            long seedBase) {
+        List<SoupSpec> specs = new ArrayList<>();
+        long seed = seedBase;
+        for (int[] size : sizes) {
+            for (double density : densities) {
+                for (int i = 0; i < seeds; i++) {
+                    specs.add(new SoupSpec(size[0], size[1], density, seed++));
+                }
+            }
+        }
+        return specs;
+    }
+
+    /**
+     * Runs a sweep described by key=value arguments. Recognized keys are sizes (e.g.
+     * 64x64,128x96), densities (e.g. 0.2,0.35), seeds (per size and density), seedBase,
+     * maxGen, maxPeriod, popWindow (0 to scale with the board), threads and out. Results are
+     * written as JSON Lines if out ends in .jsonl, otherwise as CSV. Without an out file, CSV
+     * is written to standard output.
+     * @param args Sweep parameters as key=value pairs
+     */
+    public static void main(String[] args) {
+        List<int[]> sizes = new ArrayList<>();
+        List<Double> densities = new ArrayList<>();
+        int seeds = 10;
+        long seedBase = 0;
+        long maxGen = 10000;
+        int maxPeriod = DEFAULT_MAX_PERIOD;
+        int populationWindow = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String outName = null;
+        try {
+            for (String arg : args) {
+                int split = arg.indexOf('=');
+                if (split < 0) {
+                    throw new IllegalArgumentException("Expected key=value: " + arg);
+                }
+                String key = arg.substring(0, split);
+                String value = arg.substring(split + 1);
+                if (key.equals("sizes")) {
+                    for (String size : value.split(",")) {
+                        String[] dims = size.split("x");
+                        sizes.add(new int[] { Integer.parseInt(dims[0]),
+                                Integer.parseInt(dims[1]) });
+                    }
+                } else if (key.equals("densities")) {
+                    for (String density : value.split(",")) {
+                        densities.add(Double.parseDouble(density));
+                    }
+                } else if (key.equals("seeds")) {
+                    seeds = Integer.parseInt(value);
+                } else if (key.equals("seedBase")) {
+                    seedBase = Long.parseLong(value);
+                } else if (key.equals("maxGen")) {
+                    maxGen = Long.parseLong(value);
+                } else if (key.equals("maxPeriod")) {
+                    maxPeriod = Integer.parseInt(value);
+                } else if (key.equals("popWindow")) {
+                    populationWindow = Integer.parseInt(value);
+                } else if (key.equals("threads")) {
+                    threads = Integer.parseInt(value);
+                } else if (key.equals("out")) {
+                    outName = value;
+                } else {
+                    throw new IllegalArgumentException("Unknown key: " + key);
+                }
+            }
+            if (sizes.isEmpty()) {
+                sizes.add(new int[] { 64, 64 });
+            }
+            if (densities.isEmpty()) {
+                densities.add(0.35);
+            }
+
+            SweepRunner runner = new SweepRunner(product(sizes, densities, seeds, seedBase),
+                    maxGen, maxPeriod, populationWindow, threads);
+            PrintStream out = (outName == null) ? (System.out)
+                    : (new PrintStream(new File(outName)));
+            try {
+                runner.run(out, outName != null && outName.endsWith(".jsonl"));
+            } finally {
+                if (out != System.out) {
+                    out.close();
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid sweep arguments: " + e.getMessage());
+            System.err.println("Usage: SweepRunner [sizes=WxH,...] [densities=d,...] [seeds=n]"
+                    + " [seedBase=n] [maxGen=n] [maxPeriod=n] [popWindow=n] [threads=n]"
+                    + " [out=file.csv|file.jsonl]");
+        } catch (IOException ioe) {
+            System.err.println("Could not write to the desired file.");
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Sweep failed: " + e.getMessage());
+        }
+    }
+}
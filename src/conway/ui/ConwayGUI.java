@@ -8,6 +8,7 @@ import java.awt.FlowLayout;
 import java.awt.Graphics;
 import java.awt.GridLayout;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
@@ -35,6 +36,7 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import conway.model.CellGrid;
+import conway.util.FrameExporter;
 
 /**
  * GUI class. Holds the simulation itself, along with controls.
@@ -69,11 +71,6 @@ public class ConwayGUI extends JFrame {
     private static int gridDelta = DEFAULT_GRID_DELTA;
     /** Maximum time interval between simulation updates / ticks in milliseconds. */
     private static final int TICKRATE_MAX = 70;
-    /**
-     * List of cells currently displayed as alive (shaded). Points contained in the list are
-     * located at the top left corner of the cell in the display.
-     */
-    private static Set<Point> aliveCells;
     /**
      * List of cells drawn upon each mouse event. Used so that the same cell is not triggered
      * multiple times while dragging the mouse. Points contained in the list are located at
@@ -83,7 +80,8 @@ public class ConwayGUI extends JFrame {
     /** Custom panels composing the GUI window. */
     private JPanel pnlSim, pnlControl;
     /** Buttons allowing control of the simulation. */
-    private JButton btnStart, btnIncrement, btnStop, btnReset, btnRead, btnWrite, btnResize;
+    private JButton btnStart, btnIncrement, btnStop, btnReset, btnRead, btnWrite, btnResize,
+            btnRecord;
     /** Slider that controls the tick rate of the simulation. */
     private JSlider sldrTickSpeed;
     /** Label for the tick speed slider. */
@@ -95,6 +93,10 @@ public class ConwayGUI extends JFrame {
      * sldrTickSpeed).
      */
     private Timer tickTimer;
+    /** Number of frame buffers the recording may fall behind by before frames are dropped. */
+    private static final int RECORD_BUFFERS = 16;
+    /** Exporter recording the simulation, or null if not currently recording. */
+    private FrameExporter recorder;
 
     /**
      * Constructs the GUI, initializing panels and adding mouse listeners.
@@ -103,6 +105,12 @@ public class ConwayGUI extends JFrame {
         setLocation(50, 50);
         setTitle("Conway's Game of Life");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                stopRecording();
+            }
+        });
         setResizable(false);
         Container c = getContentPane();
         c.setLayout(new BorderLayout());
@@ -174,11 +182,8 @@ public class ConwayGUI extends JFrame {
         Point p = fitPointToGrid(new Point(e.getX(), e.getY()));
         if (e.getX() < simulationWidth && e.getX() >= 0 && e.getY() < simulationHeight
                 && e.getY() >= 0 && dragPoints.add(p)) {
-            if (!aliveCells.add(p)) { // add if absent, otherwise remove
-                aliveCells.remove(p);
-            }
             model.toggleCell(e.getX() / gridDelta, e.getY() / gridDelta);
-            repaint();
+            repaintChanges();
         } // skips invalid cursor locations (from dragging outside window)
     }
 
@@ -195,19 +200,13 @@ public class ConwayGUI extends JFrame {
     }
 
     /**
-     * Updates the list of alive cells to reflect the current simulation state.
+     * Repaints only the regions of the simulation panel whose cells changed since the last
+     * repaint, rather than the whole panel.
      */
-    private void updateDisplay() {
-        aliveCells.clear();
-
-        int[][] grid = model.getGrid();
-
-        for (int y = 0; y < simulationHeight / gridDelta; y++) {
-            for (int x = 0; x < simulationWidth / gridDelta; x++) {
-                if (grid[y][x] == 1) {
-                    aliveCells.add(new Point(x * gridDelta, y * gridDelta));
-                }
-            }
+    private void repaintChanges() {
+        for (int[] region : model.takeDirtyRegions()) {
+            pnlSim.repaint(region[0] * gridDelta, region[1] * gridDelta,
+                    region[2] * gridDelta, region[3] * gridDelta);
         }
     }
 
@@ -217,8 +216,66 @@ public class ConwayGUI extends JFrame {
      */
     private void tick() {
         model.updateGrid();
-        updateDisplay();
-        repaint();
+        if (recorder != null) {
+            recorder.capture(model);
+        }
+        repaintChanges();
+    }
+
+    /**
+     * Starts recording the simulation to a user selected file. Files ending in .gif are
+     * recorded as an animated GIF, anything else as a directory of PNG images.
+     */
+    private void startRecording() {
+        try {
+            String fileName = getFileName(false, "Record Simulation");
+            // frames share one delay, so speed changes made while recording do not show
+            String interval = JOptionPane.showInputDialog(this, "Capture every Nth generation:\n"
+                    + "(GIF frame delay is fixed at the current speed, " + tickTimer.getDelay()
+                    + " ms per generation)", "1");
+            if (interval == null) {
+                return;
+            }
+            FrameExporter.Format format = fileName.toLowerCase().endsWith(".gif")
+                    ? (FrameExporter.Format.GIF) : (FrameExporter.Format.PNG);
+            recorder = new FrameExporter(new File(fileName), format,
+                    Integer.parseInt(interval.trim()), gridDelta, simulationWidth / gridDelta,
+                    simulationHeight / gridDelta, tickTimer.getDelay(), RECORD_BUFFERS);
+            recorder.capture(model);
+            btnRecord.setText("Stop Rec");
+        } catch (IllegalStateException ise) {
+            // file selection was cancelled
+        } catch (IllegalArgumentException iae) {
+            JOptionPane.showMessageDialog(this, "Interval must be a positive integer.",
+                    "Input Error", JOptionPane.ERROR_MESSAGE);
+        } catch (IOException ioe) {
+            JOptionPane.showMessageDialog(this, "Could not write to the desired file.",
+                    "File Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Stops recording, waiting for queued frames to be written. Does nothing if not currently
+     * recording.
+     */
+    private void stopRecording() {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.close();
+            if (recorder.getDroppedFrames() > 0) {
+                JOptionPane.showMessageDialog(this, recorder.getDroppedFrames()
+                        + " frame(s) were dropped because encoding fell behind.",
+                        "Recording", JOptionPane.WARNING_MESSAGE);
+            }
+        } catch (IOException ioe) {
+            JOptionPane.showMessageDialog(this, "Could not write the recording.", "File Error",
+                    JOptionPane.ERROR_MESSAGE);
+        } finally {
+            recorder = null;
+            btnRecord.setText("Record");
+        }
     }
 
     /**
@@ -228,14 +285,24 @@ public class ConwayGUI extends JFrame {
      * @throws FileNotFoundException if selected file cannot be located
      */
     private String getFileName(boolean chooserType) throws FileNotFoundException {
+        return getFileName(chooserType, chooserType ? ("Load Game State") : ("Save Game State"));
+    }
+
+    /**
+     * Retrieves the filename to either save to or read from, using the given dialog title.
+     * @param chooserType Whether the selected file is to save to (False) or read from (True)
+     * @param title Title of the file chooser dialog
+     * @return String path to the selected file
+     * @throws FileNotFoundException if selected file cannot be located
+     */
+    private String getFileName(boolean chooserType, String title) throws FileNotFoundException {
         JFileChooser fc = new JFileChooser("./");
         fc.setApproveButtonText("Select");
+        fc.setDialogTitle(title);
         int returnVal = Integer.MIN_VALUE;
         if (chooserType) { // open file
-            fc.setDialogTitle("Load Game State");
             returnVal = fc.showOpenDialog(this);
         } else { // save file
-            fc.setDialogTitle("Save Game State");
             returnVal = fc.showSaveDialog(this);
         }
         if (returnVal != JFileChooser.APPROVE_OPTION) {
@@ -253,23 +320,45 @@ public class ConwayGUI extends JFrame {
         /** ID number used for serialization. */
         private static final long serialVersionUID = 1L;
 
+        /**
+         * Constructs the panel with a white background for dead cells.
+         */
+        public SimulationPanel() {
+            setBackground(Color.WHITE);
+        }
+
+        /**
+         * Paints the live cells and grid lines, limited to the area being repainted so that
+         * small changes do not redraw the whole board.
+         */
         @Override
         public void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            // Resets display
-            setBackground(Color.WHITE);
+            super.paintComponent(g); // clears the repainted area
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, simulationWidth, simulationHeight);
+            }
+            int[][] grid = model.getGrid();
+            int minX = Math.max(0, clip.x / gridDelta);
+            int minY = Math.max(0, clip.y / gridDelta);
+            int maxX = Math.min(grid[0].length, (clip.x + clip.width - 1) / gridDelta + 1);
+            int maxY = Math.min(grid.length, (clip.y + clip.height - 1) / gridDelta + 1);
             // Draw live cells
             g.setColor(Color.BLACK);
-            for (Point p : aliveCells) {
-                g.fillRect((int)p.getX(), (int)p.getY(), gridDelta, gridDelta);
+            for (int y = minY; y < maxY; y++) {
+                for (int x = minX; x < maxX; x++) {
+                    if (grid[y][x] == 1) {
+                        g.fillRect(x * gridDelta, y * gridDelta, gridDelta, gridDelta);
+                    }
+                }
             }
             // Draw grid
             g.setColor(Color.GRAY);
-            for (int x = gridDelta; x < simulationWidth; x += gridDelta) {
-                for (int y = gridDelta; y < simulationHeight; y += gridDelta) {
-                    g.drawLine(0, y, simulationWidth, y);
-                }
-                g.drawLine(x, 0, x, simulationHeight);
+            for (int x = Math.max(1, minX) * gridDelta; x < maxX * gridDelta; x += gridDelta) {
+                g.drawLine(x, minY * gridDelta, x, maxY * gridDelta);
+            }
+            for (int y = Math.max(1, minY) * gridDelta; y < maxY * gridDelta; y += gridDelta) {
+                g.drawLine(minX * gridDelta, y, maxX * gridDelta, y);
             }
         }
     }
@@ -286,7 +375,7 @@ public class ConwayGUI extends JFrame {
          * Constructs the panel and adds buttons to it.
          */
         public ControlsPanel() {
-            super(new GridLayout(3, 3));
+            super(new GridLayout(2, 5));
             btnStart = new JButton("Start");
             btnStart.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
@@ -315,8 +404,7 @@ public class ConwayGUI extends JFrame {
                     btnStart.setEnabled(true);
                     try {
                         model.readFromFile(getFileName(true));
-                        updateDisplay();
-                        ConwayGUI.this.repaint();
+                        repaintChanges();
                     } catch (IOException ioe) {
                         JOptionPane.showMessageDialog(ConwayGUI.this,
                                 "File either does not exist or is formatted incorrectly.",
@@ -342,10 +430,9 @@ public class ConwayGUI extends JFrame {
                     tickTimer.stop();
                     btnStop.setEnabled(false);
                     btnStart.setEnabled(true);
-                    aliveCells.clear();
                     model = new CellGrid(simulationWidth / gridDelta,
                             simulationHeight / gridDelta);
-                    ConwayGUI.this.repaint();
+                    pnlSim.repaint();
                 }
             });
             add(btnReset);
@@ -366,6 +453,18 @@ public class ConwayGUI extends JFrame {
                 }
             });
             add(btnWrite);
+            btnRecord = new JButton("Record");
+            btnRecord.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    if (recorder == null) {
+                        startRecording();
+                    } else {
+                        stopRecording();
+                    }
+                }
+            });
+            add(btnRecord);
             lblSpeedSlider = new JLabel("Speed:", SwingConstants.RIGHT);
             add(lblSpeedSlider);
             sldrTickSpeed = new JSlider(0, TICKRATE_MAX);
@@ -495,6 +594,7 @@ public class ConwayGUI extends JFrame {
                         simulationWidth = formattedInputs[0];
                         simulationHeight = formattedInputs[1];
                         gridDelta = formattedInputs[2];
+                        stopRecording();
                         ConwayGUI.this.dispose();
                         dispose();
                         createNewGUIInstance();
@@ -555,7 +655,6 @@ public class ConwayGUI extends JFrame {
      * Constructs new instances of program model fields and spawns a new instance of the GUI.
      */
     private static void createNewGUIInstance() {
-        aliveCells = new HashSet<>();
         dragPoints = new HashSet<>();
         model = new CellGrid(simulationWidth / gridDelta, simulationHeight / gridDelta);
         new ConwayGUI();
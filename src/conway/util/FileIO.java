@@ -61,6 +61,26 @@ public class FileIO {
         return arr;
     }
 
+    /**
+     * Reads a file and returns a 2D array of parsed cell states sized to fit the file exactly.
+     * @param fileName Name of the file to be read
+     * @return 2D array of cell states with as many rows as the file has lines
+     * @throws IOException if the file is invalid or cannot be located
+     */
+    public static int[][] read(String fileName) throws IOException {
+        Scanner fileScan = new Scanner(new File(fileName));
+
+        int lines = 0, length = 0;
+        while (fileScan.hasNextLine()) {
+            length = Math.max(length, fileScan.nextLine().length());
+            lines++;
+        }
+
+        fileScan.close();
+
+        return read(fileName, length, lines);
+    }
+
     /**
      * Writes the given grid of cell states to a file.
      * @param fileName Name of the file where cell state grid will be output
@@ -0,0 +1,356 @@
+package conway.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import conway.model.CellGrid;
+
+/**
+ * Records generations of a simulation as an animated GIF or a sequence of PNG images. Cell
+ * states are copied into one of a fixed set of reusable frame buffers on the simulation
+ * thread, while scaling and encoding happen on a background thread. If the encoder falls
+ * behind and every buffer is in use, frames are dropped rather than stalling the simulation.
+ * @author caproven
+ */
+public class FrameExporter {
+
+    /** Output formats supported by the exporter. */
+    public enum Format {
+        /** Single looping animated GIF file. */
+        GIF,
+        /**
+         * Directory of PNG images, one per captured generation, numbered consecutively from
+         * 0 in the order they were written.
+         */
+        PNG
+    }
+
+    /** Colors used for the exported images. Index 0 is a dead cell, index 1 a live one. */
+    private static final IndexColorModel COLORS = new IndexColorModel(1, 2,
+            new byte[] { (byte)255, 0 }, new byte[] { (byte)255, 0 },
+            new byte[] { (byte)255, 0 });
+    /** Marker frame telling the encoder thread that recording has finished. */
+    private static final Frame END = new Frame(0);
+
+    /** File (GIF) or directory (PNG) the frames are written to. */
+    private final File target;
+    /** Format the frames are written in. */
+    private final Format format;
+    /** Only every Nth generation is captured. */
+    private final int interval;
+    /** Size in pixels of each cell in the exported images. */
+    private final int cellScale;
+    /** Number of horizontal cells in each frame. */
+    private final int width;
+    /** Number of vertical cells in each frame. */
+    private final int height;
+    /** Delay between generations in milliseconds, scaled by the interval for GIF frames. */
+    private final int frameDelay;
+    /** Frame buffers available to be filled by the simulation. */
+    private final BlockingQueue<Frame> free;
+    /** Filled frame buffers waiting to be encoded. */
+    private final BlockingQueue<Frame> filled;
+    /** Background thread encoding filled frames. */
+    private final Thread encoder;
+    /** Number of frames skipped because no buffer was free. */
+    private volatile long droppedFrames;
+    /** First error the encoder thread ran into, reported once recording is closed. */
+    private volatile IOException failure;
+
+    /**
+     * Constructs the exporter and starts its encoder thread.
+     * @param target File (GIF) or directory (PNG) the frames are written to
+     * @param format Format the frames are written in
+     * @param interval Only every Nth generation is captured
+     * @param cellScale Size in pixels of each cell in the exported images
+     * @param width Number of horizontal cells in each frame
+     * @param height Number of vertical cells in each frame
+     * @param frameDelay Delay between generations in milliseconds. Each GIF frame is shown for
+     * interval times this delay, so playback runs at simulation speed
+     * @param buffers Number of frame buffers, bounding how far the encoder may fall behind
+     * @throws IllegalArgumentException if any of the numeric arguments is not positive
+     * @throws IOException if the target cannot be created
+     */
+    public FrameExporter(File target, Format format, int interval, int cellScale, int width,
+            int height, int frameDelay, int buffers) throws IOException {
+        if (interval < 1 || cellScale < 1 || width < 1 || height < 1 || frameDelay < 1
+                || buffers < 1) {
+            throw new IllegalArgumentException("Export settings must be positive.");
+        }
+        if (format == Format.PNG && !target.isDirectory() && !target.mkdirs()) {
+            throw new IOException("Could not create frame directory.");
+        }
+        this.target = target;
+        this.format = format;
+        this.interval = interval;
+        this.cellScale = cellScale;
+        this.width = width;
+        this.height = height;
+        this.frameDelay = frameDelay;
+        free = new ArrayBlockingQueue<>(buffers);
+        filled = new ArrayBlockingQueue<>(buffers + 1); // room for the END marker
+        for (int i = 0; i < buffers; i++) {
+            free.add(new Frame(width * height));
+        }
+        encoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                encode();
+            }
+        }, "FrameExporter");
+        encoder.setDaemon(true);
+        encoder.start();
+    }
+
+    /**
+     * Captures the current generation of the grid if it falls on the capture interval. Never
+     * blocks: if no frame buffer is free, the frame is dropped.
+     * @param grid Grid whose current state is captured
+     * @return True if the generation was queued for encoding
+     * @throws IllegalArgumentException if the grid does not match the exporter's dimensions
+     */
+    public boolean capture(CellGrid grid) {
+        if (grid.getWidth() != width || grid.getHeight() != height) {
+            throw new IllegalArgumentException("Grid dimensions do not match the export.");
+        }
+        if (grid.getGeneration() % interval != 0) {
+            return false;
+        }
+        Frame frame = free.poll();
+        if (frame == null) {
+            droppedFrames++;
+            return false;
+        }
+        int[][] cells = grid.getGrid();
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                frame.cells[row + x] = (byte)cells[y][x];
+            }
+        }
+        filled.add(frame); // cannot fail, as there are never more frames than buffers
+        return true;
+    }
+
+    /**
+     * Retrieves the number of frames skipped because the encoder fell behind.
+     * @return Number of dropped frames
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Finishes encoding all queued frames and closes the output.
+     * @throws IOException if any frame could not be written
+     */
+    public void close() throws IOException {
+        try {
+            filled.put(END);
+            encoder.join();
+        } catch (InterruptedException ie) {
+            encoder.interrupt();
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Encoder thread body. Scales each filled frame into a single reused image, writes it out
+     * and hands the buffer back to the simulation.
+     */
+    private void encode() {
+        BufferedImage image = new BufferedImage(width * cellScale, height * cellScale,
+                BufferedImage.TYPE_BYTE_INDEXED, COLORS);
+        byte[] pixels = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+        ImageWriter gifWriter = null;
+        ImageOutputStream gifStream = null;
+        IIOMetadata gifMetadata = null;
+        long written = 0; // number of frames written so far
+        try {
+            if (format == Format.GIF) {
+                Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+                if (!writers.hasNext()) {
+                    throw new IOException("No GIF encoder available.");
+                }
+                gifWriter = writers.next();
+                if (target.exists() && !target.delete()) {
+                    throw new IOException("Could not overwrite " + target + ".");
+                }
+                gifStream = ImageIO.createImageOutputStream(target);
+                if (gifStream == null) {
+                    throw new IOException("Could not create " + target + ".");
+                }
+                gifWriter.setOutput(gifStream);
+                gifMetadata = gifMetadata(gifWriter, image);
+                gifWriter.prepareWriteSequence(null);
+            }
+            while (true) {
+                Frame frame = filled.take();
+                if (frame == END) {
+                    break;
+                }
+                render(frame, pixels);
+                free.add(frame); // cells are no longer needed once rendered
+                if (format == Format.GIF) {
+                    gifWriter.writeToSequence(new IIOImage(image, null, gifMetadata), null);
+                } else {
+                    // numbered by the exporter rather than the generation, which restarts
+                    // when the grid is reset or read from a file
+                    ImageIO.write(image, "png", new File(target,
+                            String.format("frame_%08d.png", written)));
+                }
+                written++;
+            }
+            if (gifWriter != null) {
+                gifWriter.endWriteSequence();
+            }
+        } catch (IOException ioe) {
+            failure = ioe;
+            drain();
+        } catch (InterruptedException ie) {
+            // closing was interrupted, leave the output as is
+        } finally {
+            if (gifWriter != null) {
+                gifWriter.dispose();
+            }
+            if (gifStream != null) {
+                try {
+                    gifStream.close();
+                } catch (IOException ioe) {
+                    if (failure == null) {
+                        failure = ioe;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps recycling frames after a failure until recording is closed, so the simulation is
+     * never left without buffers.
+     */
+    private void drain() {
+        try {
+            Frame frame;
+            while ((frame = filled.take()) != END) {
+                free.add(frame);
+            }
+        } catch (InterruptedException ie) {
+            // closing was interrupted, nothing left to drain
+        }
+    }
+
+    /**
+     * Scales the cells of a frame into the pixels of the output image, filling each row of
+     * cells once and copying it for the remaining pixel rows of the cell.
+     * @param frame Frame whose cells are rendered
+     * @param pixels Pixel data of the output image, one byte per pixel
+     */
+    private void render(Frame frame, byte[] pixels) {
+        int rowPixels = width * cellScale;
+        for (int y = 0; y < height; y++) {
+            int start = y * cellScale * rowPixels;
+            for (int x = 0; x < width; x++) {
+                Arrays.fill(pixels, start + x * cellScale, start + (x + 1) * cellScale,
+                        frame.cells[y * width + x]);
+            }
+            for (int line = 1; line < cellScale; line++) {
+                System.arraycopy(pixels, start, pixels, start + line * rowPixels, rowPixels);
+            }
+        }
+    }
+
+    /**
+     * Builds the per-frame GIF metadata, setting the frame delay, making the animation loop
+     * forever and giving each frame a local color table built from {@link #COLORS}. Without
+     * the table the writer falls back to its default palette, in which both indices are
+     * nearly black.
+     * @param writer GIF writer the metadata is for
+     * @param image Image the frames are written from
+     * @return Metadata to be attached to every frame
+     * @throws IIOInvalidTreeException if the writer rejects the metadata
+     */
+    private IIOMetadata gifMetadata(ImageWriter writer, BufferedImage image)
+            throws IIOInvalidTreeException {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+                ImageTypeSpecifier.createFromRenderedImage(image), param);
+        String formatName = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode)metadata.getAsTree(formatName);
+
+        IIOMetadataNode descriptor = (IIOMetadataNode)root.getElementsByTagName(
+                "ImageDescriptor").item(0);
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+
+        IIOMetadataNode colorTable = new IIOMetadataNode("LocalColorTable");
+        colorTable.setAttribute("sizeOfLocalColorTable", Integer.toString(COLORS.getMapSize()));
+        colorTable.setAttribute("sortFlag", "FALSE");
+        for (int i = 0; i < COLORS.getMapSize(); i++) {
+            IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+            entry.setAttribute("index", Integer.toString(i));
+            entry.setAttribute("red", Integer.toString(COLORS.getRed(i)));
+            entry.setAttribute("green", Integer.toString(COLORS.getGreen(i)));
+            entry.setAttribute("blue", Integer.toString(COLORS.getBlue(i)));
+            colorTable.appendChild(entry);
+        }
+        root.appendChild(colorTable);
+
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        // each frame stands for interval generations, in hundredths of a second
+        control.setAttribute("delayTime",
+                Integer.toString(Math.max(1, frameDelay * interval / 10)));
+        control.setAttribute("transparentColorIndex", "0");
+        root.appendChild(control);
+
+        IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+        IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+        loop.setAttribute("applicationID", "NETSCAPE");
+        loop.setAttribute("authenticationCode", "2.0");
+        loop.setUserObject(new byte[] { 1, 0, 0 }); // loop forever
+        extensions.appendChild(loop);
+        root.appendChild(extensions);
+
+        metadata.setFromTree(formatName, root);
+        return metadata;
+    }
+
+    /**
+     * Reusable buffer holding the cell states of one captured generation.
+     * @author caproven
+     */
+    private static class Frame {
+        /** Cell states in row-major order (0: dead, 1: alive). */
+        private final byte[] cells;
+
+        /**
+         * Constructs a frame buffer for the given number of cells.
+         * @param size Number of cells held by the frame
+         */
+        Frame(int size) {
+            cells = new byte[size];
+        }
+    }
+}